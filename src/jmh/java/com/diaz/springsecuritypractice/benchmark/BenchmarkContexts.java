@@ -0,0 +1,52 @@
+package com.diaz.springsecuritypractice.benchmark;
+import com.diaz.springsecuritypractice.SpringSecurityPracticeApplication;
+import com.diaz.springsecuritypractice.security.UsernameBloomFilter;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Starts the real application for the benchmarks that need Spring (user lookups, the security filter chain), backed
+    by the in-memory H2 database from application-h2.properties instead of MySQL.
+*/
+
+final class BenchmarkContexts {
+
+    private static final String INSERT_SQL = "INSERT INTO user_info (name, email, password, roles) VALUES (?, ?, ?, ?)";
+
+    private BenchmarkContexts() {
+    }
+
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String... properties) {
+        List<String> all = new ArrayList<>(List.of(properties));
+        all.add("server.port=0");
+        all.add("logging.level.root=WARN");
+        return new SpringApplicationBuilder(SpringSecurityPracticeApplication.class)
+                .profiles("h2")
+                .web(webApplicationType)
+                .properties(all.toArray(new String[0]))
+                .run();
+    }
+
+    /* inserts users named user0..user(count-1) sharing one precomputed hash, hashing each one would take minutes.
+       The names go into the UsernameBloomFilter too, otherwise logins would be rejected as unknown users until its next
+       refresh. */
+    static void seedUsers(ConfigurableApplicationContext context, int count, String passwordHash, String roles) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        UsernameBloomFilter usernameFilter = context.getBean(UsernameBloomFilter.class);
+        int batchSize = 10_000;
+        for (int start = 0; start < count; start += batchSize) {
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            for (int i = start; i < Math.min(count, start + batchSize); i++) {
+                usernameFilter.add("user" + i);
+                batch.add(new Object[]{"user" + i, "user" + i + "@example.com", passwordHash, roles});
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+        }
+    }
+
+}
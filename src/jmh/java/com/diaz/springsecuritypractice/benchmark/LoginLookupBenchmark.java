@@ -0,0 +1,66 @@
+package com.diaz.springsecuritypractice.benchmark;
+import com.diaz.springsecuritypractice.repository.UserInfoRepository;
+import com.diaz.springsecuritypractice.security.UserInfoUserDetails;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The login lookup on a million users, the old way (findByName loads a managed UserInfo entity) against the
+    projection (findCredentialsByName reads three columns in a read-only transaction), each with and without the
+    unique index on name. Without the index every lookup scans the table, which is where most of the time goes.
+
+        ./mvnw -Pbenchmarks verify -DskipTests -Djmh.args="LoginLookup"
+*/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginLookupBenchmark {
+
+    @Param({"1000000"})
+    private int users;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private ConfigurableApplicationContext context;
+    private UserInfoRepository userInfoRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start(WebApplicationType.NONE);
+        BenchmarkContexts.seedUsers(context, users, "$2a$10$hash", "ROLE_ADMIN,ROLE_USER");
+        if (!indexed) {
+            context.getBean(JdbcTemplate.class).execute("DROP INDEX ux_user_info_name");
+        }
+        userInfoRepository = context.getBean(UserInfoRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserInfoUserDetails entity() {
+        return new UserInfoUserDetails(userInfoRepository.findByName(randomUser()).orElseThrow());
+    }
+
+    @Benchmark
+    public UserInfoUserDetails projection() {
+        return new UserInfoUserDetails(userInfoRepository.findCredentialsByName(randomUser()).orElseThrow());
+    }
+
+    private String randomUser() {
+        return "user" + ThreadLocalRandom.current().nextInt(users);
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.diaz.springsecuritypractice.benchmark;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.service.CatalogJsonCache;
+import com.diaz.springsecuritypractice.service.Inventory;
+import com.diaz.springsecuritypractice.service.ProductCatalog;
+import com.diaz.springsecuritypractice.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    ProductService reads at catalog sizes from the 99 products we generate by default up to the hundreds of thousands
+    a production catalog holds. getProduct should stay flat as the catalog grows. getAllProductsAsJson is what the
+    /products/all endpoint serves: the snapshot's JSON bytes from CatalogJsonCache, encoded on the first call of the
+    trial and handed out as they are after that.
+
+    The service is wired by hand, every dependency loadProductsFromDb and the measured methods use has to be set here.
+*/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductCatalogBenchmark {
+
+    @Param({"99", "10000", "500000"})
+    private int catalogSize;
+
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CatalogJsonCache jsonCache = new CatalogJsonCache();
+        ReflectionTestUtils.setField(jsonCache, "objectMapper", new ObjectMapper());
+
+        productService = new ProductService();
+        ReflectionTestUtils.setField(productService, "catalog", new ProductCatalog());
+        // no sweeper thread, nothing is reserved during a trial
+        ReflectionTestUtils.setField(productService, "inventory",
+                new Inventory(Duration.ofMinutes(10), Duration.ofSeconds(1), new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(productService, "jsonCache", jsonCache);
+        ReflectionTestUtils.setField(productService, "catalogSize", catalogSize);
+        ReflectionTestUtils.setField(productService, "maxPageLimit", 1000);
+        productService.loadProductsFromDb();
+    }
+
+    @Benchmark
+    public Product getProduct() {
+        return productService.getProduct(ThreadLocalRandom.current().nextInt(1, catalogSize + 1));
+    }
+
+    @Benchmark
+    public List<Product> getAllProducts() {
+        return productService.getAllProducts();
+    }
+
+    @Benchmark
+    public byte[] getAllProductsAsJson() {
+        return productService.getAllProductsJson(productService.getCatalogSnapshot(), false);
+    }
+
+}
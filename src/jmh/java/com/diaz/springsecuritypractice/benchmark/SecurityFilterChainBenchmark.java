@@ -0,0 +1,61 @@
+package com.diaz.springsecuritypractice.benchmark;
+import com.diaz.springsecuritypractice.security.TokenService;
+import jakarta.servlet.Filter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/*
+    One full pass through the SecurityFilterChain and ProductController with MockMvc: bearer token verification,
+    @PreAuthorize, the controller and Jackson, without a real socket. The anonymous case measures how quickly an
+    unauthenticated request is turned away.
+*/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityFilterChainBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String bearer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start(WebApplicationType.SERVLET);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .addFilters(context.getBean("springSecurityFilterChain", Filter.class))
+                .build();
+        bearer = "Bearer " + context.getBean(TokenService.class).issue(UsernamePasswordAuthenticationToken.authenticated(
+                "devin", null, AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult getProductWithBearerToken() throws Exception {
+        return mockMvc.perform(get("/products/42").header("Authorization", bearer)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getProductAnonymous() throws Exception {
+        return mockMvc.perform(get("/products/42")).andReturn();
+    }
+
+}
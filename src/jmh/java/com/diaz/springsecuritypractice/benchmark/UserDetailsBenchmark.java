@@ -0,0 +1,36 @@
+package com.diaz.springsecuritypractice.benchmark;
+import com.diaz.springsecuritypractice.entity.UserInfo;
+import com.diaz.springsecuritypractice.security.UserInfoUserDetails;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Building the UserDetails Spring Security works with from a UserInfo row, which includes splitting the
+    comma-separated roles string into authorities.
+*/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDetailsBenchmark {
+
+    @Param({"ROLE_USER", "ROLE_ADMIN,ROLE_USER", "ROLE_ADMIN,ROLE_USER,ROLE_AUDITOR,ROLE_SUPPORT"})
+    private String roles;
+
+    private UserInfo userInfo;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userInfo = new UserInfo(1, "devin", "devin@example.com", "$2a$10$hash", roles);
+    }
+
+    @Benchmark
+    public UserInfoUserDetails construct() {
+        return new UserInfoUserDetails(userInfo);
+    }
+
+}
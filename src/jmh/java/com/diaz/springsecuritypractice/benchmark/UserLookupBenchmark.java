@@ -0,0 +1,48 @@
+package com.diaz.springsecuritypractice.benchmark;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    UserInfoUserDetailsService.loadUserByUsername against an H2 database standing in for MySQL, for a small and a
+    large user table. H2 runs in the same JVM, so this measures our side of the lookup (JPA, Hibernate, UserDetails
+    construction) without network time, not what a MySQL round trip costs.
+*/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserLookupBenchmark {
+
+    @Param({"1000", "100000"})
+    private int users;
+
+    private ConfigurableApplicationContext context;
+    private UserDetailsService userDetailsService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContexts.start(WebApplicationType.NONE);
+        BenchmarkContexts.seedUsers(context, users, "$2a$10$hash", "ROLE_ADMIN,ROLE_USER");
+        userDetailsService = context.getBean("userDetailsService", UserDetailsService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        return userDetailsService.loadUserByUsername("user" + ThreadLocalRandom.current().nextInt(users));
+    }
+
+}
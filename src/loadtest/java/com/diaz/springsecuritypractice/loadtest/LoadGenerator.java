@@ -0,0 +1,277 @@
+package com.diaz.springsecuritypractice.loadtest;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Closed-loop load generator - 'concurrency' virtual users, each sends a request, waits for the complete response and
+    immediately sends the next one. The load therefore adapts to the server: when responses slow down, fewer requests
+    are sent. That makes it good at finding the throughput a given concurrency reaches, but a closed loop never sends
+    the requests that would have queued up behind a slow one, so its tail latencies are lower than what an open
+    stream of users (fixed arrival rate) would see during the same stall.
+
+    Every virtual user logs in through the /login form once before the first run and keeps its session for every run
+    after that. During a run it picks each request at random by the scenario weights:
+
+        login         - POST /login with a random seeded user, BCrypt included. A separate client without cookies so
+                        every attempt is a fresh login
+        product       - GET /products/{id} for a random product, on the virtual user's session
+        all_products  - GET /products/all, the whole catalog as JSON, on the virtual user's session
+
+    Latencies are recorded in HdrHistograms, one per scenario and virtual user so recording never contends, and merged
+    once the run is over. Only successful requests are recorded:
+
+        rejected - 503 with Retry-After, the server shed the request on purpose (e.g. the BCrypt queue is full). The
+                   virtual user waits out Retry-After before its next request, like a well-behaved client would
+        error    - any other unexpected status, or an I/O error
+*/
+
+final class LoadGenerator implements AutoCloseable {
+
+    private static final int LOGIN_ATTEMPTS = 10;
+
+    enum Scenario {
+        LOGIN, PRODUCT, ALL_PRODUCTS;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // how a request ended
+    private enum Outcome {
+        OK, REJECTED, ERROR
+    }
+
+    // what happened to one scenario's requests during a run, latencies are those of the successful ones
+    record ScenarioResult(Histogram latencyMicros, long rejected, long errors) {
+
+        long requests() {
+            return latencyMicros.getTotalCount() + rejected + errors;
+        }
+
+        double rejectedRate() {
+            return requests() == 0 ? 0 : (double) rejected / requests();
+        }
+
+        double errorRate() {
+            return requests() == 0 ? 0 : (double) errors / requests();
+        }
+
+        double percentileMillis(double percentile) {
+            return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+    }
+
+    private final URI base;
+    private final int concurrency;
+    private final Map<Scenario, Integer> weights;
+    private final int totalWeight;
+    private final int users;
+    private final String password;
+    private final int products;
+
+    // shared by every virtual user for the login scenario, it keeps no cookies so each login starts a new session
+    private final HttpClient loginClient;
+
+    private final List<VirtualUser> virtualUsers = new ArrayList<>();
+
+    LoadGenerator(URI base, int concurrency, Map<Scenario, Integer> weights, int users, String password, int products) {
+        this.base = base;
+        this.concurrency = concurrency;
+        this.weights = new EnumMap<>(weights);
+        this.totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        this.users = users;
+        this.password = password;
+        this.products = products;
+        this.loginClient = client(false);
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("At least one scenario needs a weight above 0");
+        }
+    }
+
+    /* logs every virtual user in through the /login form, one after the other. Logging them all in at once would be a
+       burst of BCrypt hashes the hashing queue sheds with 503, a virtual user retries after Retry-After when it is */
+    void logIn() throws IOException, InterruptedException {
+        for (int i = virtualUsers.size(); i < concurrency; i++) {
+            HttpClient session = client(true);
+            virtualUsers.add(new VirtualUser(session));
+            for (int attempt = 1; ; attempt++) {
+                HttpResponse<Void> response = session.send(login(randomUser()), HttpResponse.BodyHandlers.discarding());
+                if (loggedIn(response)) {
+                    break;
+                }
+                if (response.statusCode() != 503 || attempt == LOGIN_ATTEMPTS) {
+                    throw new IllegalStateException("Virtual user could not log in: " + response.statusCode());
+                }
+                long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+                TimeUnit.SECONDS.sleep(retryAfter);
+            }
+        }
+    }
+
+    // runs every virtual user for 'duration' and returns the merged results per scenario
+    Map<Scenario, ScenarioResult> run(Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Thread> threads = new ArrayList<>(virtualUsers.size());
+        for (int i = 0; i < virtualUsers.size(); i++) {
+            VirtualUser virtualUser = virtualUsers.get(i);
+            threads.add(Thread.ofPlatform().name("load-" + i).start(() -> virtualUser.run(deadline)));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<Scenario, ScenarioResult> results = new EnumMap<>(Scenario.class);
+        for (Scenario scenario : Scenario.values()) {
+            Histogram merged = new Histogram(3);
+            long rejected = 0;
+            long errors = 0;
+            for (VirtualUser virtualUser : virtualUsers) {
+                merged.add(virtualUser.latencies.get(scenario));
+                rejected += virtualUser.rejected.get(scenario)[0];
+                errors += virtualUser.errors.get(scenario)[0];
+            }
+            results.put(scenario, new ScenarioResult(merged, rejected, errors));
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        loginClient.close();
+        for (VirtualUser virtualUser : virtualUsers) {
+            virtualUser.session.close();
+        }
+    }
+
+    private HttpClient client(boolean cookies) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10));
+        if (cookies) {
+            builder.cookieHandler(new CookieManager());
+        }
+        return builder.build();
+    }
+
+    private HttpRequest login(String username) {
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(base.resolve("/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+    }
+
+    // a successful form login redirects to the saved request or '/', a failed one to /login?error
+    private static boolean loggedIn(HttpResponse<?> response) {
+        return response.statusCode() == 302
+                && !response.headers().firstValue("Location").orElse("").contains("error");
+    }
+
+    private String randomUser() {
+        return "loaduser" + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    // one simulated client with its own session, it keeps its latencies of the current run
+    private final class VirtualUser {
+
+        private final HttpClient session;
+        private final Map<Scenario, Histogram> latencies = new EnumMap<>(Scenario.class);
+        private final Map<Scenario, long[]> rejected = new EnumMap<>(Scenario.class);
+        private final Map<Scenario, long[]> errors = new EnumMap<>(Scenario.class);
+
+        private VirtualUser(HttpClient session) {
+            this.session = session;
+        }
+
+        // sends requests back to back until the deadline, the results of an earlier run are thrown away first
+        private void run(long deadline) {
+            for (Scenario scenario : Scenario.values()) {
+                latencies.put(scenario, new Histogram(3));
+                rejected.put(scenario, new long[1]);
+                errors.put(scenario, new long[1]);
+            }
+            try {
+                while (System.nanoTime() - deadline < 0) {
+                    Scenario scenario = pick();
+                    long start = System.nanoTime();
+                    HttpResponse<?> response;
+                    try {
+                        response = send(scenario);
+                    } catch (IOException e) {
+                        errors.get(scenario)[0]++;
+                        continue;
+                    }
+                    switch (outcome(scenario, response)) {
+                        case OK -> latencies.get(scenario)
+                                .recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        case REJECTED -> {
+                            rejected.get(scenario)[0]++;
+                            long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+                            // never past the deadline, the run would otherwise last longer than its duration
+                            long wait = Math.min(TimeUnit.SECONDS.toNanos(retryAfter), deadline - System.nanoTime());
+                            TimeUnit.NANOSECONDS.sleep(Math.max(0, wait));
+                        }
+                        case ERROR -> errors.get(scenario)[0]++;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private Scenario pick() {
+            int ticket = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (Map.Entry<Scenario, Integer> weight : weights.entrySet()) {
+                ticket -= weight.getValue();
+                if (ticket < 0) {
+                    return weight.getKey();
+                }
+            }
+            throw new IllegalStateException("Weights changed during the run");
+        }
+
+        // sends one request of the scenario and reads the whole response
+        private HttpResponse<?> send(Scenario scenario) throws IOException, InterruptedException {
+            return switch (scenario) {
+                case LOGIN -> loginClient.send(login(randomUser()), HttpResponse.BodyHandlers.discarding());
+                case PRODUCT -> get("/products/" + (1 + ThreadLocalRandom.current().nextInt(products)));
+                case ALL_PRODUCTS -> get("/products/all");
+            };
+        }
+
+        private HttpResponse<byte[]> get(String path) throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(base.resolve(path)).GET().build();
+            return session.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        }
+
+        private Outcome outcome(Scenario scenario, HttpResponse<?> response) {
+            if (response.statusCode() == 503 && response.headers().firstValue("Retry-After").isPresent()) {
+                return Outcome.REJECTED;
+            }
+            boolean ok = scenario == Scenario.LOGIN ? loggedIn(response) : response.statusCode() == 200;
+            return ok ? Outcome.OK : Outcome.ERROR;
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.diaz.springsecuritypractice.loadtest;
+import com.diaz.springsecuritypractice.loadtest.LoadGenerator.Scenario;
+import com.diaz.springsecuritypractice.loadtest.LoadGenerator.ScenarioResult;
+import com.diaz.springsecuritypractice.security.UsernameBloomFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+    End-to-end load test of the running application: Tomcat, the SecurityFilterChain, form login with BCrypt,
+    ProductController and JPA on the in-memory H2 database. Only runs in the loadtest Maven profile:
+
+        ./mvnw -Ploadtest verify
+        ./mvnw -Ploadtest verify -Dloadtest.concurrency=64 -Dloadtest.duration=60s
+
+    Seeds loadtest.users users, warms the JVM up for loadtest.warmup, then measures for loadtest.duration. The report
+    (throughput, shed and failed requests, p50 / p99 / p99.9 latency per scenario) is printed and written to
+    target/loadtest-report.txt, and the build fails when a result breaks a limit in loadtest-thresholds.properties
+    (see LoadThresholds).
+
+    The thresholds are regression gates for the build machine, not targets. They leave headroom for a noisy machine,
+    after a change that makes things faster on purpose tighten them, after one that has to cost time raise them in the
+    same commit so the reason is on record.
+*/
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"h2", "loadtest"})
+class LoadIT {
+
+    private static final String PASSWORD = "load-test-password";
+    private static final String INSERT_SQL = "INSERT INTO user_info (name, email, password, roles) VALUES (?, ?, ?, ?)";
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${loadtest.concurrency:16}")
+    private int concurrency;
+
+    @Value("${loadtest.warmup:10s}")
+    private Duration warmup;
+
+    @Value("${loadtest.duration:30s}")
+    private Duration duration;
+
+    @Value("${loadtest.users:1000}")
+    private int users;
+
+    @Value("${loadtest.weight.login:2}")
+    private int loginWeight;
+
+    @Value("${loadtest.weight.product:88}")
+    private int productWeight;
+
+    @Value("${loadtest.weight.all-products:10}")
+    private int allProductsWeight;
+
+    @Value("${loadtest.thresholds:classpath:loadtest-thresholds.properties}")
+    private Resource thresholds;
+
+    @Value("${loadtest.report:target/loadtest-report.txt}")
+    private Path report;
+
+    @Value("${products.catalog.size}")
+    private int products;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UsernameBloomFilter usernameFilter;
+
+    @Test
+    void staysWithinThresholds() throws Exception {
+        seedUsers();
+
+        Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        weights.put(Scenario.LOGIN, loginWeight);
+        weights.put(Scenario.PRODUCT, productWeight);
+        weights.put(Scenario.ALL_PRODUCTS, allProductsWeight);
+
+        Map<Scenario, ScenarioResult> results;
+        try (LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:" + port), concurrency, weights,
+                users, PASSWORD, products)) {
+            generator.logIn();
+            // JIT compilation, connection pools and caches settle during the warmup, its results are thrown away
+            generator.run(warmup);
+            results = generator.run(duration);
+        }
+
+        double seconds = duration.toMillis() / 1000.0;
+        String text = report(results, seconds);
+        System.out.println(text);
+        Files.createDirectories(report.toAbsolutePath().getParent());
+        Files.writeString(report, text);
+
+        List<String> violations = LoadThresholds.load(thresholds).violations(results, seconds);
+        assertTrue(violations.isEmpty(), "Load test regressed past its thresholds:\n  "
+                + String.join("\n  ", violations));
+    }
+
+    // users loaduser0 .. loaduser(users-1) sharing one hash, hashing each one would take longer than the test
+    private void seedUsers() {
+        String hash = passwordEncoder.encode(PASSWORD);
+        List<Object[]> rows = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            String name = "loaduser" + i;
+            usernameFilter.add(name);
+            rows.add(new Object[]{name, name + "@example.com", hash, "ROLE_ADMIN,ROLE_USER"});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    private String report(Map<Scenario, ScenarioResult> results, double seconds) {
+        StringBuilder text = new StringBuilder(String.format(
+                "Load test: %d virtual users for %.0f s (after %d s warmup)%n%n", concurrency, seconds,
+                warmup.toSeconds()));
+        text.append(String.format("%-14s %10s %9s %8s %12s %9s %9s %9s %9s%n", "scenario", "requests", "rejected",
+                "errors", "requests/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        long total = 0;
+        for (Map.Entry<Scenario, ScenarioResult> entry : results.entrySet()) {
+            ScenarioResult result = entry.getValue();
+            total += result.requests();
+            text.append(String.format("%-14s %10d %9d %8d %12.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey().label(), result.requests(), result.rejected(), result.errors(),
+                    result.requests() / seconds,
+                    result.percentileMillis(50), result.percentileMillis(99), result.percentileMillis(99.9),
+                    result.latencyMicros().getMaxValue() / 1000.0));
+        }
+        text.append(String.format("%-14s %10d %9s %8s %12.1f%n", "total", total, "", "", total / seconds));
+        return text.toString();
+    }
+
+}
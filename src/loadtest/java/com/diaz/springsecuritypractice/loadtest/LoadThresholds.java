@@ -0,0 +1,87 @@
+package com.diaz.springsecuritypractice.loadtest;
+import com.diaz.springsecuritypractice.loadtest.LoadGenerator.Scenario;
+import com.diaz.springsecuritypractice.loadtest.LoadGenerator.ScenarioResult;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+    The limits a load test run must stay within, read from loadtest-thresholds.properties. Per scenario (its label,
+    e.g. 'product'):
+
+        <scenario>.p50-ms, .p99-ms, .p999-ms  - highest allowed latency at that percentile, in milliseconds
+        <scenario>.min-throughput             - lowest allowed requests per second
+        <scenario>.max-rejected-rate          - highest allowed share of requests the server shed with 503, 0.01 = 1%
+        <scenario>.max-error-rate             - highest allowed share of failed requests
+
+    A limit that isn't in the file isn't checked.
+*/
+
+final class LoadThresholds {
+
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+    private static final String[] PERCENTILE_KEYS = {"p50-ms", "p99-ms", "p999-ms"};
+
+    private final Properties limits;
+
+    private LoadThresholds(Properties limits) {
+        this.limits = limits;
+    }
+
+    static LoadThresholds load(Resource resource) throws IOException {
+        Properties limits = new Properties();
+        try (InputStream in = resource.getInputStream()) {
+            limits.load(in);
+        }
+        return new LoadThresholds(limits);
+    }
+
+    // a description of every limit the results broke, empty when the run passed
+    List<String> violations(Map<Scenario, ScenarioResult> results, double seconds) {
+        List<String> violations = new ArrayList<>();
+        for (Map.Entry<Scenario, ScenarioResult> entry : results.entrySet()) {
+            String scenario = entry.getKey().label();
+            ScenarioResult result = entry.getValue();
+
+            for (int i = 0; i < PERCENTILE_KEYS.length; i++) {
+                Double limit = limit(scenario + "." + PERCENTILE_KEYS[i]);
+                double actual = result.percentileMillis(PERCENTILES[i]);
+                if (limit != null && actual > limit) {
+                    violations.add(String.format("%s %s: %.2f ms is above the limit of %.2f ms",
+                            scenario, PERCENTILE_KEYS[i], actual, limit));
+                }
+            }
+
+            Double minThroughput = limit(scenario + ".min-throughput");
+            double throughput = result.requests() / seconds;
+            if (minThroughput != null && throughput < minThroughput) {
+                violations.add(String.format("%s throughput: %.1f requests/s is below the limit of %.1f requests/s",
+                        scenario, throughput, minThroughput));
+            }
+
+            Double maxRejectedRate = limit(scenario + ".max-rejected-rate");
+            if (maxRejectedRate != null && result.rejectedRate() > maxRejectedRate) {
+                violations.add(String.format("%s rejected rate: %.4f is above the limit of %.4f",
+                        scenario, result.rejectedRate(), maxRejectedRate));
+            }
+
+            Double maxErrorRate = limit(scenario + ".max-error-rate");
+            if (maxErrorRate != null && result.errorRate() > maxErrorRate) {
+                violations.add(String.format("%s error rate: %.4f is above the limit of %.4f",
+                        scenario, result.errorRate(), maxErrorRate));
+            }
+        }
+        return violations;
+    }
+
+    private Double limit(String key) {
+        String value = limits.getProperty(key);
+        return value == null || value.isBlank() ? null : Double.valueOf(value.trim());
+    }
+
+}
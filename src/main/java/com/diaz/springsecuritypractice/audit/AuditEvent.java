@@ -0,0 +1,26 @@
+package com.diaz.springsecuritypractice.audit;
+
+/*
+    One entry of the audit log. Created on the request thread and handed to AuditLog, which writes it later on its own
+    thread, so it only carries plain values that are cheap to capture.
+
+        time          - when it happened, milliseconds since the epoch
+        type          - what happened, see Type
+        username      - the name that logged in, failed to, or signed up (as typed by the client)
+        detail        - for a failed login the reason (e.g. BadCredentialsException), otherwise null
+        remoteAddress - the client's IP when it is known, the /login form records it, /auth/token doesn't
+        recordedNanos - System.nanoTime() when the event was recorded, for the audit.flush latency metric
+*/
+
+public record AuditEvent(long time, Type type, String username, String detail, String remoteAddress,
+                         long recordedNanos) {
+
+    public enum Type {
+        LOGIN_SUCCESS, LOGIN_FAILURE, REGISTRATION
+    }
+
+    public static AuditEvent of(Type type, String username, String detail, String remoteAddress) {
+        return new AuditEvent(System.currentTimeMillis(), type, username, detail, remoteAddress, System.nanoTime());
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.diaz.springsecuritypractice.audit;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Audit log of logins (successful and failed) and sign-ups through /products/new and /products/bulk, one JSON object
+    per line, e.g.
+
+        {"time":"2026-10-18T18:52:15.123Z","type":"LOGIN_FAILURE","username":"devin","detail":"BadCredentialsException",
+         "remoteAddress":"127.0.0.1"}
+
+    Logins are our hottest endpoint, so recording an event does no I/O. The request thread only puts the event into an
+    AuditRingBuffer and carries on. A single writer thread takes events out in batches of up to audit.batch-size,
+    appends them to the memory mapped segment files (AuditSegments) and, with audit.log.sync, forces the batch to disk
+    once for all of its events instead of once per event.
+
+    Full buffer - if events are recorded faster than the disk takes them, the buffer fills up and
+    audit.buffer.full-policy decides:
+
+        block - the request thread waits up to audit.buffer.block-timeout for room, the event is dropped after that.
+                Logins slow down rather than go unrecorded
+        drop  - the event is dropped right away, requests never wait on the audit log
+
+    Dropped events are counted in audit.events{outcome="dropped"}. audit.flush times how long events take from being
+    recorded to being written, per batch from its oldest event, so a growing backlog shows up there first.
+*/
+
+@Component
+public class AuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    public enum FullPolicy {
+        BLOCK, DROP
+    }
+
+    // how long a blocked request thread sleeps between attempts to add its event
+    private static final long BLOCK_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Value("${audit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${audit.log.directory:logs/audit}")
+    private String directory;
+
+    @Value("${audit.log.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${audit.log.max-segments:0}")
+    private int maxSegments;
+
+    @Value("${audit.log.sync:true}")
+    private boolean sync;
+
+    @Value("${audit.buffer.capacity:8192}")
+    private int capacity;
+
+    @Value("${audit.buffer.full-policy:block}")
+    private FullPolicy fullPolicy;
+
+    @Value("${audit.buffer.block-timeout:100ms}")
+    private Duration blockTimeout;
+
+    @Value("${audit.batch-size:512}")
+    private int batchSize;
+
+    // how long the writer sleeps when the buffer is empty, the longest an event waits before it is written
+    @Value("${audit.writer.poll-interval:5ms}")
+    private Duration pollInterval;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AuditRingBuffer buffer;
+    private AuditSegments segments;
+    private Thread writer;
+    private volatile boolean running;
+
+    /* request threads between their check of running and the end of their offer. The writer stops only once running
+       is false and none are left, an event that got past the check just before stop() is written, not stranded */
+    private final AtomicInteger recording = new AtomicInteger();
+
+    private Counter written;
+    private Counter dropped;
+    private Counter failed;
+    private Timer flush;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        this.buffer = new AuditRingBuffer(capacity);
+        this.segments = new AuditSegments(Path.of(directory), (int) segmentSize.toBytes(), maxSegments);
+        log.info("Writing the audit log to {}", segments.currentSegment().toAbsolutePath());
+
+        this.written = events("written");
+        this.dropped = events("dropped");
+        this.failed = events("failed");
+        this.flush = Timer.builder("audit.flush")
+                .description("Time from an audit event being recorded until it was written to the audit log")
+                .register(meterRegistry);
+        Gauge.builder("audit.buffer.size", buffer, AuditRingBuffer::size)
+                .description("Audit events waiting to be written")
+                .register(meterRegistry);
+
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // stops taking events, the writer finishes what is already in the buffer before the segment is closed
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer != null) {
+            running = false;
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            if (writer.isAlive()) {
+                log.warn("The audit writer didn't finish in time, {} audit events may not have been written",
+                        buffer.size());
+            }
+        }
+    }
+
+    public void loginSucceeded(String username, String remoteAddress) {
+        record(AuditEvent.of(AuditEvent.Type.LOGIN_SUCCESS, username, null, remoteAddress));
+    }
+
+    public void loginFailed(String username, String reason, String remoteAddress) {
+        record(AuditEvent.of(AuditEvent.Type.LOGIN_FAILURE, username, reason, remoteAddress));
+    }
+
+    public void registered(String username) {
+        record(AuditEvent.of(AuditEvent.Type.REGISTRATION, username, null, null));
+    }
+
+    // hands the event to the writer thread, what happens when the buffer is full depends on audit.buffer.full-policy
+    public void record(AuditEvent event) {
+        if (!enabled) {
+            return;
+        }
+        // counted before running is read, see writeLoop
+        recording.incrementAndGet();
+        try {
+            if (!offer(event)) {
+                dropped.increment();
+            }
+        } finally {
+            recording.decrementAndGet();
+        }
+    }
+
+    private boolean offer(AuditEvent event) {
+        if (running && buffer.offer(event)) {
+            return true;
+        }
+        if (running && fullPolicy == FullPolicy.BLOCK) {
+            long deadline = System.nanoTime() + blockTimeout.toNanos();
+            while (running && System.nanoTime() - deadline < 0) {
+                LockSupport.parkNanos(BLOCK_RETRY_NANOS);
+                if (buffer.offer(event)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        LineBuffer line = new LineBuffer();
+        long pollNanos = pollInterval.toNanos();
+        while (true) {
+            /* read before draining, so events added before stop() are still written. A request thread that saw
+               running before stop() cleared it may not have offered its event yet, the writer waits for it */
+            boolean stopping = !running && recording.get() == 0;
+            buffer.drain(batch::add, batchSize);
+            if (batch.isEmpty()) {
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(pollNanos);
+                continue;
+            }
+            write(batch, line);
+            batch.clear();
+        }
+        try {
+            segments.close();
+        } catch (IOException e) {
+            log.error("Could not close the audit log segment {}", segments.currentSegment(), e);
+        }
+    }
+
+    private void write(List<AuditEvent> batch, LineBuffer line) {
+        try {
+            for (AuditEvent event : batch) {
+                line.reset();
+                encode(event, line);
+                segments.append(line.bytes(), line.size());
+            }
+            if (sync) {
+                segments.force();
+            }
+            written.increment(batch.size());
+            // the batch is in the order it was recorded, its first event waited the longest
+            flush.record(System.nanoTime() - batch.get(0).recordedNanos(), TimeUnit.NANOSECONDS);
+        } catch (IOException | RuntimeException e) {
+            failed.increment(batch.size());
+            log.error("Could not write {} audit events to {}", batch.size(), segments.currentSegment(), e);
+        }
+    }
+
+    private void encode(AuditEvent event, LineBuffer line) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(line)) {
+            json.writeStartObject();
+            json.writeStringField("time", Instant.ofEpochMilli(event.time()).toString());
+            json.writeStringField("type", event.type().name());
+            json.writeStringField("username", event.username());
+            if (event.detail() != null) {
+                json.writeStringField("detail", event.detail());
+            }
+            if (event.remoteAddress() != null) {
+                json.writeStringField("remoteAddress", event.remoteAddress());
+            }
+            json.writeEndObject();
+        }
+        line.write('\n');
+    }
+
+    private Counter events(String outcome) {
+        return Counter.builder("audit.events")
+                .description("Audit events by what became of them")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    // reused for every event, exposes its array so appending doesn't copy the bytes first
+    private static final class LineBuffer extends ByteArrayOutputStream {
+
+        private LineBuffer() {
+            super(256);
+        }
+
+        private byte[] bytes() {
+            return buf;
+        }
+
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.diaz.springsecuritypractice.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/*
+    Bounded ring buffer for many producers (request threads recording events) and a single consumer (the audit writer
+    thread). No locks, a full buffer makes offer() return false immediately instead of blocking.
+
+    Every slot has a sequence number telling whose turn it is:
+
+        sequence == n      - the slot is free for the producer that claims ticket n
+        sequence == n + 1  - the producer holding ticket n has stored its event, the consumer may take it
+        sequence == n + capacity - the consumer emptied it, free again for ticket n + capacity one lap later
+
+    A producer claims a ticket with a compare-and-set on 'tail', stores its event and then bumps the slot's sequence,
+    which publishes the event to the consumer. Producers only contend on that one compare-and-set, and the consumer
+    never contends with anybody, it is the only thread that moves 'head'.
+*/
+
+final class AuditRingBuffer {
+
+    private final AtomicReferenceArray<AuditEvent> events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // only written by the consumer thread, volatile so size() can be read from elsewhere
+    private volatile long head;
+
+    AuditRingBuffer(int capacity) {
+        // power of two so a bit mask picks the slot
+        int slots = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.events = new AtomicReferenceArray<>(slots);
+        this.sequences = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // adds the event, false when the buffer is full
+    boolean offer(AuditEvent event) {
+        while (true) {
+            long ticket = tail.get();
+            int slot = (int) ticket & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == ticket) {
+                if (tail.compareAndSet(ticket, ticket + 1)) {
+                    events.set(slot, event);
+                    sequences.set(slot, ticket + 1);
+                    return true;
+                }
+            } else if (sequence < ticket) {
+                // the consumer hasn't emptied this slot since the previous lap
+                return false;
+            }
+            // otherwise another producer took this ticket first, try the next one
+        }
+    }
+
+    // hands up to 'max' events to the consumer in the order they were added, returns how many. consumer thread only
+    int drain(Consumer<AuditEvent> consumer, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                // empty, or a producer claimed the slot but hasn't stored its event yet
+                break;
+            }
+            AuditEvent event = events.get(slot);
+            events.set(slot, null);
+            sequences.set(slot, head + events.length());
+            head++;
+            drained++;
+            consumer.accept(event);
+        }
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return events.length();
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.diaz.springsecuritypractice.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+    The audit log on disk, a directory of append-only segment files audit-00000001.log, audit-00000002.log ...
+
+    Memory mapped - each segment is created at its full size and mapped into memory, appending an event is a copy into
+    that memory, no write() system call per event. The operating system writes the pages back to the file, force()
+    makes it do so now and waits until they are on disk.
+
+    Rotation - when the next event doesn't fit, the segment is cut down to what was written and the next one is
+    created. Every start begins a new segment, existing ones are never written again. A segment that wasn't closed
+    (the process was killed) keeps its full size and ends in zero bytes after the last event.
+
+    Only ever used by AuditLog's writer thread, so nothing here is thread safe.
+*/
+
+final class AuditSegments implements AutoCloseable {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("audit-(\\d+)\\.log");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private long sequence;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    AuditSegments(Path directory, int segmentSize, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        List<Long> existing = existingSequences();
+        this.sequence = existing.isEmpty() ? 0 : existing.get(existing.size() - 1);
+        open();
+    }
+
+    // appends one encoded event, rotating first when it doesn't fit into the current segment
+    void append(byte[] event, int length) throws IOException {
+        if (length > segmentSize) {
+            throw new IOException("Audit event of " + length + " bytes is larger than a segment");
+        }
+        if (buffer.remaining() < length) {
+            rotate();
+        }
+        buffer.put(event, 0, length);
+    }
+
+    // waits until everything appended so far is written to the file on disk
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.truncate(buffer.position());
+            channel.close();
+            channel = null;
+        }
+    }
+
+    Path currentSegment() {
+        return segmentPath(sequence);
+    }
+
+    private void rotate() throws IOException {
+        close();
+        open();
+        deleteOldSegments();
+    }
+
+    private void open() throws IOException {
+        sequence++;
+        this.channel = FileChannel.open(segmentPath(sequence),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    // keeps the newest maxSegments segments, 0 keeps all of them
+    private void deleteOldSegments() throws IOException {
+        if (maxSegments <= 0) {
+            return;
+        }
+        List<Long> existing = existingSequences();
+        for (int i = 0; i < existing.size() - maxSegments; i++) {
+            Files.deleteIfExists(segmentPath(existing.get(i)));
+        }
+    }
+
+    private List<Long> existingSequences() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "audit-*.log")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    sequences.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        sequences.sort(null);
+        return sequences;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("audit-%08d.log", sequence));
+    }
+
+}
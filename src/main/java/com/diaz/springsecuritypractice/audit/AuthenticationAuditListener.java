@@ -0,0 +1,50 @@
+package com.diaz.springsecuritypractice.audit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.event.AbstractAuthenticationFailureEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.stereotype.Component;
+
+/*
+    Records logins in the AuditLog. Spring Security publishes an application event for every authentication our
+    AuthenticationManager decides (see SecurityConfig.authenticationManager), success or failure, and @EventListener
+    methods receive them on the request thread.
+
+    Only username + password logins are audited (the /login form and /auth/token). Bearer tokens are authenticated on
+    every request that carries one, those aren't logins and would drown the log.
+*/
+
+@Component
+public class AuthenticationAuditListener {
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @EventListener
+    public void onSuccess(AuthenticationSuccessEvent event) {
+        Authentication authentication = event.getAuthentication();
+        if (authentication instanceof UsernamePasswordAuthenticationToken) {
+            auditLog.loginSucceeded(authentication.getName(), remoteAddress(authentication));
+        }
+    }
+
+    @EventListener
+    public void onFailure(AbstractAuthenticationFailureEvent event) {
+        Authentication authentication = event.getAuthentication();
+        if (authentication instanceof UsernamePasswordAuthenticationToken) {
+            auditLog.loginFailed(authentication.getName(), event.getException().getClass().getSimpleName(),
+                    remoteAddress(authentication));
+        }
+    }
+
+    // the form login attaches the request's details to the token, /auth/token doesn't
+    private static String remoteAddress(Authentication authentication) {
+        return authentication.getDetails() instanceof WebAuthenticationDetails details
+                ? details.getRemoteAddress()
+                : null;
+    }
+
+}
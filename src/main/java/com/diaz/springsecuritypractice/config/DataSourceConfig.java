@@ -0,0 +1,95 @@
+package com.diaz.springsecuritypractice.config;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Read replicas - only active when datasource.replicas.urls is set, otherwise Spring Boot sets up its single
+    DataSource from spring.datasource.* as usual.
+
+    With replicas, the DataSource JPA, Flyway and JdbcTemplate use is a ReadWriteRoutingDataSource behind a
+    LazyConnectionDataSourceProxy (see ReadWriteRoutingDataSource for why it needs one). Read-only transactions go to
+    the replicas, everything else (writes, Flyway migrations, JdbcTemplate calls outside a transaction) to the primary.
+
+    Separate pools - the primary keeps the pool Spring Boot would have built from spring.datasource.* and
+    spring.datasource.hikari.*, each replica gets a pool of datasource.replicas.maximum-pool-size connections. Logins
+    outnumber sign-ups by far, so most connections are taken from the replica pools and a burst of logins can't use up
+    the connections sign-ups need on the primary. Every pool reports HikariCP's metrics tagged with its pool name
+    (primary, replica-1, replica-2, ...).
+*/
+
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.replicas", name = "urls")
+public class DataSourceConfig {
+
+    @Value("${datasource.replicas.urls}")
+    private List<String> replicaUrls;
+
+    @Value("${datasource.replicas.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${datasource.replicas.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${datasource.replicas.maximum-pool-size:10}")
+    private int replicaPoolSize;
+
+    // how long a read waits for a replica connection before that replica counts as unhealthy (HikariCP minimum 250ms)
+    @Value("${datasource.replicas.connection-timeout:1s}")
+    private Duration replicaConnectionTimeout;
+
+    @Value("${datasource.replicas.health-check-interval:5s}")
+    private Duration healthCheckInterval;
+
+    // the pool Spring Boot would have created on its own, spring.datasource.hikari.* still applies to it
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadWriteRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+                                                       MeterRegistry meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>(replicaUrls.size());
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("replica-" + (i + 1));
+            config.setJdbcUrl(replicaUrls.get(i).trim());
+            config.setUsername(replicaUsername);
+            config.setPassword(replicaPassword);
+            config.setMaximumPoolSize(replicaPoolSize);
+            config.setConnectionTimeout(replicaConnectionTimeout.toMillis());
+            config.setReadOnly(true);
+            // start even when a replica is down, the health check keeps it out of rotation until it is up
+            config.setInitializationFailTimeout(-1);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(new HikariDataSource(config));
+        }
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicas, healthCheckInterval, meterRegistry);
+    }
+
+    // the DataSource everything else is given, it only picks primary or replica once the first statement runs
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.diaz.springsecuritypractice.config;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Sends the connections of read-only transactions (@Transactional(readOnly = true), e.g. the login lookup
+    UserInfoRepository.findCredentialsByName) to the read replicas and every other connection to the primary. Each
+    replica has its own pool, read-only transactions take turns over them.
+
+    The decision needs to know whether the transaction is read-only, which Spring only records after the transaction
+    has begun and JPA has already asked for its connection. DataSourceConfig therefore puts a
+    LazyConnectionDataSourceProxy in front of this class: JPA gets a placeholder connection, and the real one is only
+    taken from here when the first statement runs.
+
+    Unhealthy replicas - a replica that refuses a connection, or fails the health check every
+    datasource.replicas.health-check-interval, is skipped until it passes the check again. With no healthy replica,
+    read-only transactions go to the primary (counted in datasource.replica.fallbacks), so a replica outage makes logins
+    put more load on the primary but doesn't stop them. A replica that goes down while a query runs on it still fails
+    that query, and the pool may hand out a dead connection until the next check notices.
+
+    Replication lag - a replica may not have the rows the primary committed a moment ago. Code that must read its own
+    writes runs in a read-write transaction, which always goes to the primary.
+*/
+
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    // how long the health check waits for a replica to answer Connection.isValid
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+    private final Counter fallbacks;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<HikariDataSource> replicaPools,
+                                      Duration healthCheckInterval, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicaPools.stream().map(Replica::new).toList();
+        this.fallbacks = Counter.builder("datasource.replica.fallbacks")
+                .description("Read-only transactions sent to the primary because no replica was healthy")
+                .register(meterRegistry);
+        Gauge.builder("datasource.replicas.healthy", this, ReadWriteRoutingDataSource::healthyReplicas)
+                .description("Read replicas currently taking read-only transactions")
+                .register(meterRegistry);
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, healthCheckInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            Connection connection = replicaConnection();
+            if (connection != null) {
+                return connection;
+            }
+            fallbacks.increment();
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // the replica pools are set up with their own credentials, a connection as another user can only be the primary
+        return primary.getConnection(username, password);
+    }
+
+    public int healthyReplicas() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    // stops the health check and closes the replica pools, the primary pool is a bean of its own and closed by Spring
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    // a connection from the next healthy replica, null when none of them has one
+    private Connection replicaConnection() {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                return replica.pool.getConnection();
+            } catch (SQLException e) {
+                markUnhealthy(replica, e);
+            }
+        }
+        return null;
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection()) {
+                if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    markHealthy(replica);
+                } else {
+                    markUnhealthy(replica, null);
+                }
+            } catch (SQLException | RuntimeException e) {
+                markUnhealthy(replica, e);
+            }
+        }
+    }
+
+    private void markHealthy(Replica replica) {
+        if (!replica.healthy) {
+            replica.healthy = true;
+            log.info("Read replica {} is healthy again, sending read-only transactions to it",
+                    replica.pool.getJdbcUrl());
+        }
+    }
+
+    private void markUnhealthy(Replica replica, Exception cause) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("Read replica {} is unhealthy, skipping it until it passes a health check",
+                    replica.pool.getJdbcUrl(), cause);
+        }
+        // the pool's idle connections are most likely dead as well, don't hand them out once the replica is back
+        if (replica.pool.getHikariPoolMXBean() != null) {
+            replica.pool.getHikariPoolMXBean().softEvictConnections();
+        }
+    }
+
+    private static final class Replica {
+
+        private final HikariDataSource pool;
+        private volatile boolean healthy = true;
+
+        private Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.diaz.springsecuritypractice.config;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.task.DelegatingSecurityContextAsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/*
+    Threads that write the NDJSON stream of /products/all (Accept: application/x-ndjson). A StreamingResponseBody
+    releases the request thread and is written by an MVC async thread instead, which holds on to it until the client
+    has read the whole catalog. A slow client can take minutes.
+
+    Spring Boot's default for MVC async requests is the application task executor (8 threads, unbounded queue) and a
+    30 second async timeout from Tomcat. With those, only 8 streams were written at once, the rest queued without a
+    response and every request still unfinished after 30 s, running or queued, was ended with a 503. The streams get
+    their own pool instead:
+
+        products.stream.threads         - streams written at once, one platform thread each. Tomcat's blocking write
+                                          holds its thread while the client isn't reading, a virtual thread would pin
+                                          its carrier there, so these stay platform threads in both threading modes
+        products.stream.queue-capacity  - streams waiting for a thread, beyond that the request is answered right away
+                                          with 503 + Retry-After (see ApiExceptionHandler) instead of queueing
+        products.stream.timeout         - how long a stream may take from start to end, sized for a slow client reading
+                                          the whole catalog. It applies to every MVC async request, the stream is the
+                                          only one we have
+
+    Servlet stack only, the reactive build streams from Netty's event loops (see ReactiveProductController).
+*/
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class StreamingConfig implements WebMvcConfigurer {
+
+    @Value("${products.stream.threads:64}")
+    private int streamThreads;
+
+    @Value("${products.stream.queue-capacity:256}")
+    private int streamQueueCapacity;
+
+    @Value("${products.stream.timeout:10m}")
+    private Duration streamTimeout;
+
+    @Bean
+    //Writes StreamingResponseBody responses, rejects streams once every thread is busy and the queue is full
+    public ThreadPoolTaskExecutor streamingTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamThreads);
+        executor.setMaxPoolSize(streamThreads);
+        executor.setQueueCapacity(streamQueueCapacity);
+        executor.setThreadNamePrefix("stream-");
+        return executor;
+    }
+
+    // MVC async requests run on the streaming pool, the wrapper copies the caller's SecurityContext onto each stream
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new DelegatingSecurityContextAsyncTaskExecutor(streamingTaskExecutor()));
+        configurer.setDefaultTimeout(streamTimeout.toMillis());
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.diaz.springsecuritypractice.config;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.security.task.DelegatingSecurityContextAsyncTaskExecutor;
+
+/*
+    Virtual threads (Java 21) - threads managed by the JVM instead of the operating system. A platform thread costs a
+    fixed OS stack and Tomcat caps them at server.tomcat.threads.max (200), so at most 200 requests can be in progress
+    and the rest wait in line even when those 200 are only waiting on MySQL. A virtual thread only occupies an OS
+    (carrier) thread while it is running, when it blocks on a JDK socket or a java.util.concurrent lock it is parked
+    and the carrier runs another one. Every request can get its own virtual thread. Not every wait parks though:
+    Tomcat's blocking socket read and write wait in Object.wait(), which pins the carrier, so a request stuck on a slow
+    client still holds an OS thread and the scheduler stops adding carriers at 256 (measured in the README).
+
+    spring.threads.virtual.enabled=true switches the mode on: Spring Boot then runs Tomcat's request handling and its
+    task executors on virtual threads. Everything in this class only applies in that mode.
+
+    SecurityContext - Spring Security keeps the logged in user in a ThreadLocal. That keeps working on virtual threads,
+    each request's virtual thread has its own copy. Work handed to another thread (@Async methods) runs on the
+    application task executor, which we wrap so the submitting thread's SecurityContext travels with the task. The
+    NDJSON StreamingResponseBody is the exception, it keeps its platform thread pool (see StreamingConfig).
+
+    BCrypt is left on the HashingExecutor's platform threads on purpose. Hashing never blocks, so a virtual thread
+    running it would hold on to its carrier for the full ~100 ms, and enough logins would occupy every carrier.
+    Request threads simply park while they wait for the hash, which frees their carrier.
+*/
+
+@Configuration
+public class ThreadingConfig {
+
+    // @Async methods run here, the wrapper copies the caller's SecurityContext onto each task
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public AsyncTaskExecutor applicationTaskExecutor(SimpleAsyncTaskExecutorBuilder builder) {
+        return new DelegatingSecurityContextAsyncTaskExecutor(builder.build());
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.security.HashingCapacityExceededException;
+import com.diaz.springsecuritypractice.service.InsufficientStockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/*
+    @RestControllerAdvice - a class whose @ExceptionHandler methods apply to every controller. Instead of each
+    endpoint catching the same exceptions, an exception thrown anywhere in a controller (or the services it calls) is
+    turned into an HTTP response here.
+*/
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    // a stream of the whole catalog takes a while, no point in retrying right away
+    private static final int STREAM_RETRY_AFTER_SECONDS = 10;
+
+    // the password hashing pool is saturated (e.g. a burst of sign-ups), tell the client when to come back
+    @ExceptionHandler(HashingCapacityExceededException.class)
+    public ResponseEntity<String> hashingCapacityExceeded(HashingCapacityExceededException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+
+    // every NDJSON stream thread is busy and the queue in front of them is full (see StreamingConfig)
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<String> streamCapacityExceeded(TaskRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(STREAM_RETRY_AFTER_SECONDS))
+                .body("Too many product streams in progress, try again later");
+    }
+
+    // a constraint rejected the write, e.g. signing up with a name that is already taken (ux_user_info_name)
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<String> dataIntegrityViolation(DataIntegrityViolationException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("Conflicts with existing data, e.g. a name already in use");
+    }
+
+    // not enough stock left for a reservation, e.g. the product sold out during a flash sale
+    @ExceptionHandler(InsufficientStockException.class)
+    public ResponseEntity<String> insufficientStock(InsufficientStockException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+}
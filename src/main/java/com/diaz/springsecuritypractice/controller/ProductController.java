@@ -1,11 +1,33 @@
 package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.dto.BulkImportResult;
 import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.ProductPage;
+import com.diaz.springsecuritypractice.dto.ProductSearch;
+import com.diaz.springsecuritypractice.dto.Reservation;
+import com.diaz.springsecuritypractice.dto.ReservationRequest;
+import com.diaz.springsecuritypractice.dto.StockLevel;
 import com.diaz.springsecuritypractice.entity.UserInfo;
+import com.diaz.springsecuritypractice.service.CatalogSnapshot;
 import com.diaz.springsecuritypractice.service.ProductService;
+import com.diaz.springsecuritypractice.service.UserImportService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
 
 /*
@@ -52,9 +74,37 @@ E.g:
     ===
     User user = new User("Devin", "dab", admin)
 
+Cursor pagination - rather than returning every product at once, /products/all?after=<productId>&limit=<n> returns
+'limit' products with an id greater than 'after' plus a cursor for the next page. Adding the 'limit' parameter is what
+switches the endpoint into paginated mode, 'after' defaults to 0 which is the start of the catalog.
+
+NDJSON (newline delimited JSON) - one JSON object per line instead of one big JSON array. Sending
+'Accept: application/x-ndjson' to /products/all streams each product to the client as it is written, so neither the
+server nor the client ever holds the whole response in memory.
+
+Search - GET /products/search filters the catalog on the server, e.g.
+/products/search?minPrice=100&maxPrice=500&minQuantity=3&name=product 1&sort=price&direction=desc&limit=20. Every
+filter is optional, 'sort' is one of id, price, quantity or name and 'direction' asc or desc.
+
+Stock - the 'quantity' of a product in /products/{id}, /products/all and /products/search (minQuantity and
+sort=quantity too) is the stock it started with when the catalog was loaded. Those responses are cached by ETag and
+only change with the catalog. GET /products/{id}/stock returns the units left right now, after open reservations.
+
+Reservations - POST /products/{id}/reservations with {"quantity": n} takes n units of the product out of stock for the
+logged in user and returns a reservationId. DELETE /products/reservations/{reservationId} puts them back, otherwise they
+return to stock on their own once the reservation expires (inventory.reservation.ttl).
+
+StreamingResponseBody - lets a controller write directly to the response output stream. Spring runs it on an async
+thread after the controller method returns, so the request thread is released while the products are written. The
+async threads are a pool of their own, see StreamingConfig for its size and the stream timeout.
+
+Servlet stack only, the reactive build (spring.main.web-application-type=reactive) serves these endpoints from
+ReactiveProductController instead.
+
 */
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/products")
 public class ProductController {
 
@@ -62,6 +112,13 @@ public class ProductController {
     @Autowired
     private ProductService service;
 
+    @Autowired
+    private UserImportService userImportService;
+
+    // Spring Boot's configured Jackson mapper, used to write products one by one in NDJSON mode
+    @Autowired
+    private ObjectMapper objectMapper;
+
     // localhost:8080/products/welcome -> this in browser will display method GET request
     @GetMapping("/welcome")
     public String welcome() {
@@ -76,18 +133,184 @@ public class ProductController {
         return service.addUserInfo(userInfo);
     }
 
-    // return all random objects created in service class in JSON format
+    // bulk sign-up for onboarding many users at once, the body is a JSON array of users or NDJSON (one user per line).
+    // the request body is read as a stream so the users are never all in memory at the same time
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public BulkImportResult importUsers(HttpServletRequest request) throws IOException {
+        return userImportService.importUsers(request.getInputStream());
+    }
+
+    // return all random objects created in service class in JSON format, 304 when the client's copy is still current
     @GetMapping("/all")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
-    public List<Product> getAllTheProducts() {
-        return service.getAllProducts();
+    public ResponseEntity<byte[]> getAllTheProducts(WebRequest request) {
+        CatalogSnapshot snapshot = service.getCatalogSnapshot();
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(service.getCatalogEtag(snapshot, gzip))) {
+            return notModified();
+        }
+        ResponseEntity.BodyBuilder response = cachedJson();
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(service.getAllProductsJson(snapshot, gzip));
+    }
+
+    // one page of products, e.g. localhost:8080/products/all?after=100&limit=50
+    @GetMapping(value = "/all", params = "limit")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
+    public ProductPage getProductPage(@RequestParam(defaultValue = "0") int after, @RequestParam int limit) {
+        return service.getProductPage(after, limit);
+    }
+
+    // streams every product as NDJSON, each product is serialized and written out without building a JSON array
+    @GetMapping(value = "/all", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
+    public ResponseEntity<StreamingResponseBody> streamAllTheProducts() {
+        List<Product> products = service.getAllProducts();
+        ObjectWriter writer = objectMapper.writerFor(Product.class);
+
+        StreamingResponseBody body = outputStream -> {
+            // the generator must not close the servlet output stream, Spring still needs it to complete the response,
+            // and we write our own newline between products instead of Jackson's default space separator
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                for (Product product : products) {
+                    writer.writeValue(generator, product);
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // products filtered by price range, minimum quantity and name prefix, 400 for an unknown sort or direction
+    @GetMapping("/search")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<List<Product>> searchProducts(@RequestParam(required = false) Double minPrice,
+                                                        @RequestParam(required = false) Double maxPrice,
+                                                        @RequestParam(required = false) Integer minQuantity,
+                                                        @RequestParam(required = false) String name,
+                                                        @RequestParam(defaultValue = "id") String sort,
+                                                        @RequestParam(defaultValue = "asc") String direction,
+                                                        @RequestParam(defaultValue = "100") int limit) {
+        ProductSearch.Sort order = ProductSearch.Sort.fromParameter(sort);
+        boolean descending = direction.equalsIgnoreCase("desc");
+        if (order == null || (!descending && !direction.equalsIgnoreCase("asc"))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.searchProducts(ProductSearch.builder()
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .minQuantity(minQuantity)
+                .namePrefix(name)
+                .sort(order)
+                .descending(descending)
+                .limit(limit)
+                .build()));
     }
 
-    // allows us to target a specific project and return it's JSON data
+    // allows us to target a specific project and return it's JSON data, 304 when the client's copy is still current.
+    // the ETag is the whole catalog's, so an id that isn't in it is answered 404 before the ETag is compared
     @GetMapping("/{id}")
     @PreAuthorize("hasAuthority('ROLE_USER')")
-    public Product getProductById(@PathVariable int id) {
-        return service.getProduct(id);
+    public ResponseEntity<byte[]> getProductById(@PathVariable int id, WebRequest request) {
+        CatalogSnapshot snapshot = service.getCatalogSnapshot();
+        if (snapshot.find(id) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(service.getCatalogEtag(snapshot, false))) {
+            return notModified();
+        }
+        return cachedJson().body(service.getProductJson(snapshot, id));
+    }
+
+    // units of the product left right now, never cached unlike the product's own JSON
+    @GetMapping("/{id}/stock")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public StockLevel getProductStock(@PathVariable int id) {
+        return service.getProductStock(id);
+    }
+
+    // holds units of a product for the logged in user, they go back into stock when released or after the reservation's
+    // ttl. 201 with the reservation, or 409 when not enough units are left
+    @PostMapping("/{id}/reservations")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<Reservation> reserveProduct(@PathVariable int id, @RequestBody ReservationRequest request,
+                                                      Authentication authentication) {
+        if (request.getQuantity() < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(service.reserveProduct(id, request.getQuantity(), authentication.getName()));
+    }
+
+    // gives a reservation's units back, 404 when it doesn't exist, already expired or isn't the user's own
+    @DeleteMapping("/reservations/{reservationId}")
+    @PreAuthorize("hasAuthority('ROLE_USER')")
+    public ResponseEntity<Void> releaseReservation(@PathVariable String reservationId, Authentication authentication) {
+        return service.releaseReservation(reservationId, authentication.getName())
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /* checkNotModified has already set the ETag header (and the 304 status when it matched), so the responses below
+       don't set it again. no-cache lets clients keep the response but makes them revalidate it with If-None-Match
+       before every use, instead of Spring Security's default no-store which forbids keeping it at all. These helpers
+       are shared with ReactiveProductController. */
+    static ResponseEntity<byte[]> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    static ResponseEntity.BodyBuilder cachedJson() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+    }
+
+    // true when the Accept-Encoding header lists gzip without q=0. the wildcard * only counts when gzip isn't listed
+    // at all, so 'gzip, *;q=0' accepts gzip. a q value that isn't a number is ignored, as if the client hadn't sent one
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip")) {
+                return !refused(parts);
+            }
+            if (name.equals("*") && wildcard == null) {
+                wildcard = !refused(parts);
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    // true when the coding's parameters carry q=0
+    private static boolean refused(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=") && isZero(parameter.substring(2))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZero(String quality) {
+        try {
+            return Double.parseDouble(quality) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
 }
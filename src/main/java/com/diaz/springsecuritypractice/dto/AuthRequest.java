@@ -0,0 +1,23 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+/*
+    Credentials posted to /auth/token in exchange for a bearer token.
+
+    E.g:
+        JSON {
+            username: devin
+            password: dab
+        }
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AuthRequest {
+
+    private String username;
+    private String password;
+
+}
@@ -0,0 +1,36 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Summary of a bulk user import. A bad row doesn't stop the import, it is counted in 'failed' and described in
+    'failures' (row numbers start at 1, in the order the users were sent). Only the first rows that failed are listed
+    so a completely broken file can't produce a response as big as the file itself.
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkImportResult {
+
+    private int received;
+    private int imported;
+    private int failed;
+    @Builder.Default
+    private List<RowFailure> failures = new ArrayList<>();
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RowFailure {
+
+        private int row;
+        private String name;
+        private String reason;
+
+    }
+
+}
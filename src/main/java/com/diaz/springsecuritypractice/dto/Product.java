@@ -1,9 +1,13 @@
 package com.diaz.springsecuritypractice.dto;
 import lombok.*;
+import lombok.extern.jackson.Jacksonized;
 
 /*
-@Data - this annotation from lombok provides us with encapsulation, that being getters, setters, toString, equals(),
-and hashcode() methods.
+@Value - this annotation from lombok provides us with encapsulation, that being getters, toString, equals(), and
+hashcode() methods, and makes every field private final. Unlike @Data there are no setters, a Product can't change
+once it is built. Every CatalogSnapshot hands the same Product objects to all request threads, so a caller changing
+one would change it for everybody (stock that changes lives in Inventory, not here). 'quantity' is the stock the
+product started with when the catalog was loaded, the units left right now come from GET /products/{id}/stock.
 
 equals() and hashcode() - equals() is a boolean method that returns whether and object is equal to another. hashcode()
 returns an integer (hash) that helps us find an object faster. hashing is utilized by HashMaps thus the O(1) TC.
@@ -15,15 +19,16 @@ Person person = Person.builder()
                       .age(30)
                       .build()
 
-Additionally comes with setter methods as well. @Builder simplifies the readability of method chaining, in this
-case with setter methods. We set the values of Person w/ name: John Doe and age: 30. Usually another example of
-method chaining is on our Spring Security Config class for future reference.
+@Builder simplifies the readability of method chaining. We set the values of Person w/ name: John Doe and age: 30.
+Usually another example of method chaining is on our Spring Security Config class for future reference.
+
+@Jacksonized - without setters or a no-args constructor Jackson reads a Product through its builder instead.
 */
 
-@Data
+@Value
 @AllArgsConstructor
-@NoArgsConstructor
 @Builder
+@Jacksonized
 public class Product {
 
     private int productId;
@@ -0,0 +1,24 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+import java.util.List;
+
+/*
+    One page of products returned by cursor (keyset) pagination. The client passes nextCursor back as the 'after'
+    request parameter to fetch the following page, a null nextCursor means there are no more products to read.
+
+    E.g:
+        GET /products/all?limit=2          -> { products: [1, 2], nextCursor: 2 }
+        GET /products/all?after=2&limit=2  -> { products: [3, 4], nextCursor: 4 }
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductPage {
+
+    private List<Product> products;
+    private Integer nextCursor;
+
+}
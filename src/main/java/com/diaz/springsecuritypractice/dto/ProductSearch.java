@@ -0,0 +1,52 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+import java.util.Locale;
+
+/*
+    The filters of GET /products/search. Every filter is optional, a null one matches every product.
+
+    E.g:
+        GET /products/search?minPrice=100&maxPrice=500&minQuantity=3&name=product 1&sort=price&direction=desc&limit=20
+        ===
+        ProductSearch(minPrice=100.0, maxPrice=500.0, minQuantity=3, namePrefix=product 1, sort=PRICE,
+                      descending=true, limit=20)
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductSearch {
+
+    // inclusive price range
+    private Double minPrice;
+    private Double maxPrice;
+
+    private Integer minQuantity;
+
+    // matched against the start of productName, ignoring case
+    private String namePrefix;
+
+    @Builder.Default
+    private Sort sort = Sort.ID;
+
+    private boolean descending;
+
+    private int limit;
+
+    public enum Sort {
+        ID, PRICE, QUANTITY, NAME;
+
+        // the sort named by a request parameter (any case), null when there is no such sort
+        public static Sort fromParameter(String value) {
+            for (Sort sort : values()) {
+                if (sort.name().equals(value.toUpperCase(Locale.ROOT))) {
+                    return sort;
+                }
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+import java.time.Instant;
+
+/*
+    A hold on 'quantity' units of a product. The units are taken out of stock until the reservation is released
+    (DELETE /products/reservations/{reservationId}) or it expires at 'expiresAt', whichever comes first.
+    'remaining' is the product's stock left right after this reservation was made.
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class Reservation {
+
+    private String reservationId;
+    private int productId;
+    private int quantity;
+    private Instant expiresAt;
+    private int remaining;
+
+}
@@ -0,0 +1,16 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+/*
+    Body of POST /products/{id}/reservations, how many units of the product to hold.
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ReservationRequest {
+
+    private int quantity;
+
+}
@@ -0,0 +1,18 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+/*
+    How many units of a product are left right now, after every open reservation (see Inventory). A Product's
+    'quantity' is only the stock it started with when the catalog was loaded.
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class StockLevel {
+
+    private int productId;
+    private int available;
+
+}
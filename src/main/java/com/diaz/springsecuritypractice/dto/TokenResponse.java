@@ -0,0 +1,19 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+/*
+    Response of a successful /auth/token login. The client sends accessToken back on every request in the header
+    'Authorization: Bearer <accessToken>' until expiresIn seconds have passed, then it logs in again.
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TokenResponse {
+
+    private String accessToken;
+    private String tokenType;
+    private long expiresIn;
+
+}
@@ -0,0 +1,18 @@
+package com.diaz.springsecuritypractice.dto;
+import lombok.*;
+
+/*
+    The three columns a login needs, read by UserInfoRepository.findCredentialsByName. Unlike a UserInfo entity this
+    isn't tracked by Hibernate, so loading it costs no snapshot for dirty checking and no persistence context entry.
+*/
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserCredentials {
+
+    private String name;
+    private String password;
+    private String roles;
+
+}
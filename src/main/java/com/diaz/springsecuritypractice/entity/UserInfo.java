@@ -3,6 +3,8 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -20,9 +22,14 @@ import lombok.NoArgsConstructor;
     keys. In the case of GenerationType.IDENTITY, this means that the persistence provider must assign primary keys
     for the entity using a database identity column. This is a type of column that automatically generate unique
     values for each row when new rows are inserted.
+
+    @Table(indexes) - names are unique and every login looks a user up by name, so the column carries a unique index.
+    The schema itself is created by the Flyway migrations in src/main/resources/db/migration, Hibernate only checks
+    that this class still matches it (spring.jpa.hibernate.ddl-auto=validate).
 */
 
 @Entity
+@Table(name = "user_info", indexes = @Index(name = "ux_user_info_name", columnList = "name", unique = true))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
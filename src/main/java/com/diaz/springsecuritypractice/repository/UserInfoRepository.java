@@ -1,7 +1,12 @@
 package com.diaz.springsecuritypractice.repository;
 
+import com.diaz.springsecuritypractice.dto.UserCredentials;
 import com.diaz.springsecuritypractice.entity.UserInfo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -16,6 +21,16 @@ import java.util.Optional;
     Optional<Type> - is a container object used to contain not-null objects. Using this is preferable to returning
     'null' for not found values, as it avoids the risk of NullPointerException and makes the code that calls the
     method deal explicitly with the possibility that there might not be a user with the given username
+
+    findCredentialsByName - the login query. 'select new' builds a UserCredentials straight from the three columns
+    instead of loading a managed UserInfo entity, and the read-only transaction tells Hibernate not to flush or dirty
+    check anything. The lookup by name is served by the unique index ux_user_info_name (see UserInfo). Being read-only
+    also sends it to a read replica when there are any (see ReadWriteRoutingDataSource), findCredentialsByNameOnPrimary
+    is the same query in a read-write transaction for when the replica may not have caught up yet.
+
+    updatePassword - swaps a user's password hash for a new one, but only while the stored hash is still
+    'currentPassword'. Returns the number of rows changed, 0 when the password was changed by someone else in the
+    meantime. Used by PasswordRehasher to upgrade hashes after a login.
 */
 
 
@@ -27,4 +42,24 @@ public interface UserInfoRepository extends JpaRepository<UserInfo, Integer> {
 
     // Custom JPA method that will be used in our custom UserDetailsService interface to load user from database
     Optional<UserInfo> findByName(String username);
+
+    String CREDENTIALS_BY_NAME = "select new com.diaz.springsecuritypractice.dto.UserCredentials(u.name, u.password, "
+            + "u.roles) from UserInfo u where u.name = :name";
+
+    // Login lookup, only the name, password hash and roles of the user
+    @Transactional(readOnly = true)
+    @Query(CREDENTIALS_BY_NAME)
+    Optional<UserCredentials> findCredentialsByName(@Param("name") String username);
+
+    // The login lookup on the primary, a read-write transaction is never routed to a replica
+    @Transactional
+    @Query(CREDENTIALS_BY_NAME)
+    Optional<UserCredentials> findCredentialsByNameOnPrimary(@Param("name") String username);
+
+    // Compare-and-set of the password hash, see updatePassword above
+    @Transactional
+    @Modifying
+    @Query("update UserInfo u set u.password = :newPassword where u.name = :name and u.password = :currentPassword")
+    int updatePassword(@Param("name") String username, @Param("currentPassword") String currentPassword,
+                       @Param("newPassword") String newPassword);
 }
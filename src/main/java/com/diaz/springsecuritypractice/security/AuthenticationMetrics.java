@@ -0,0 +1,64 @@
+package com.diaz.springsecuritypractice.security;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Timers for each stage a login goes through, published as one metric 'auth.stage' with two tags:
+
+        stage   - user_query      UserInfoRepository.findCredentialsByName
+                  user_details    building UserInfoUserDetails from the row
+                  password_match  PasswordEncoder.matches (includes the wait for a hashing thread)
+                  authentication  the whole DaoAuthenticationProvider call, all of the above together
+                  method_security the @PreAuthorize check on ProductController
+
+        outcome - success, bad_credentials, unknown_user for logins, granted / denied for method security, error when
+                  the stage threw something else (database down, hashing pool saturated), filtered for a user_query
+                  that UsernameBloomFilter answered without asking the database
+
+    Logins answered from the UserCache skip user_query and user_details, so those two only count cache misses.
+
+    With percentiles-histogram enabled for auth.stage (application.properties) Prometheus can compute p99 per stage and
+    outcome, e.g. histogram_quantile(0.99, sum by (le, stage) (rate(auth_stage_seconds_bucket[5m]))).
+*/
+
+@Component
+public class AuthenticationMetrics {
+
+    public static final String USER_QUERY = "user_query";
+    public static final String USER_DETAILS = "user_details";
+    public static final String PASSWORD_MATCH = "password_match";
+    public static final String AUTHENTICATION = "authentication";
+    public static final String METHOD_SECURITY = "method_security";
+
+    public static final String SUCCESS = "success";
+    public static final String BAD_CREDENTIALS = "bad_credentials";
+    public static final String UNKNOWN_USER = "unknown_user";
+    public static final String GRANTED = "granted";
+    public static final String DENIED = "denied";
+    public static final String ERROR = "error";
+    public static final String FILTERED = "filtered";
+
+    private final MeterRegistry registry;
+
+    public AuthenticationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // the timer for one stage and outcome, the registry hands back the same timer on every call
+    public Timer timer(String stage, String outcome) {
+        return Timer.builder("auth.stage")
+                .description("Time spent in each stage of authentication and authorization")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    // records the time elapsed since 'startNanos' (a System.nanoTime() reading) under the stage and outcome
+    public void record(String stage, String outcome, long startNanos) {
+        timer(stage, outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+}
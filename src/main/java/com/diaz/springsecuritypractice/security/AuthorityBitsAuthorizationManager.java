@@ -0,0 +1,159 @@
+package com.diaz.springsecuritypractice.security;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+    AuthorizationManager - what Spring Security asks "may this Authentication call this method?" before running a
+    method annotated with @PreAuthorize. The default implementation parses the annotation's SpEL expression and
+    evaluates it against the user's list of GrantedAuthority objects on every call.
+
+    Our endpoints only use the simple forms hasAuthority('X'), hasAnyAuthority('X', 'Y'), hasRole('X') and
+    hasAnyRole('X', 'Y'). At startup we translate each of those annotations into a bit mask of the roles it accepts
+    (see AuthorityRegistry), so a check at request time is:
+
+        (user's role bits & method's role bits) != 0
+
+    one AND instruction, no expression evaluation and no allocation. Any expression we don't recognise (e.g.
+    "hasRole('ADMIN') and #id == principal.id") is left to Spring's PreAuthorizeAuthorizationManager, so the
+    annotations keep working exactly as documented.
+
+    Every decision is timed under the method_security stage (see AuthenticationMetrics). This manager is created before
+    the meter registry exists, so the metrics bean is looked up on the first check rather than injected.
+*/
+
+public class AuthorityBitsAuthorizationManager implements AuthorizationManager<MethodInvocation> {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorityBitsAuthorizationManager.class);
+
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private static final Pattern SIMPLE_EXPRESSION =
+            Pattern.compile("^\\s*(hasAuthority|hasAnyAuthority|hasRole|hasAnyRole)\\s*\\((.*)\\)\\s*$");
+    private static final Pattern ARGUMENT = Pattern.compile("\\s*'([^']+)'\\s*(,|$)");
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    // marks a method whose expression must be evaluated by the fallback manager
+    private static final long FALLBACK = 0L;
+
+    private final PreAuthorizeAuthorizationManager fallback = new PreAuthorizeAuthorizationManager();
+    private final ConcurrentHashMap<Method, Long> compiled = new ConcurrentHashMap<>();
+
+    private final ObjectProvider<AuthenticationMetrics> metricsProvider;
+    private volatile AuthenticationMetrics metrics;
+
+    public AuthorityBitsAuthorizationManager(ObjectProvider<AuthenticationMetrics> metricsProvider) {
+        this.metricsProvider = metricsProvider;
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation invocation) {
+        long start = System.nanoTime();
+        AuthorizationDecision decision = decide(authentication, invocation);
+
+        AuthenticationMetrics stageMetrics = metrics;
+        if (stageMetrics == null) {
+            stageMetrics = metrics = metricsProvider.getIfAvailable();
+        }
+        if (stageMetrics != null) {
+            stageMetrics.record(AuthenticationMetrics.METHOD_SECURITY, decision != null && decision.isGranted()
+                    ? AuthenticationMetrics.GRANTED : AuthenticationMetrics.DENIED, start);
+        }
+        return decision;
+    }
+
+    private AuthorizationDecision decide(Supplier<Authentication> authentication, MethodInvocation invocation) {
+        Long mask = compiled.get(invocation.getMethod());
+        if (mask == null) {
+            // a method we didn't see at startup (e.g. a bean created later), compile it once now
+            mask = compiled.computeIfAbsent(invocation.getMethod(),
+                    method -> compile(method, AopUtils.getTargetClass(invocation.getThis())));
+        }
+        if (mask == FALLBACK) {
+            return fallback.check(authentication, invocation);
+        }
+        return (AuthorityRegistry.bitsOf(authentication.get()) & mask) != 0 ? GRANTED : DENIED;
+    }
+
+    // compiles the @PreAuthorize expressions of every controller once the application context is ready
+    @EventListener
+    public void precompile(ContextRefreshedEvent event) {
+        ApplicationContext context = event.getApplicationContext();
+        for (String beanName : context.getBeanNamesForAnnotation(Controller.class)) {
+            Class<?> beanType = context.getType(beanName);
+            if (beanType == null) {
+                continue;
+            }
+            // controllers are proxied for method security, the annotations live on the class we wrote
+            Class<?> type = ClassUtils.getUserClass(beanType);
+            ReflectionUtils.doWithMethods(type, method -> compiled.computeIfAbsent(method, m -> compile(m, type)),
+                    method -> AnnotatedElementUtils.hasAnnotation(method, PreAuthorize.class)
+                            || AnnotatedElementUtils.hasAnnotation(method.getDeclaringClass(), PreAuthorize.class));
+        }
+        log.debug("Compiled {} @PreAuthorize expressions into authority bit masks", compiled.size());
+    }
+
+    // returns the bit mask of the roles the method's expression accepts, or FALLBACK if it isn't a simple expression
+    private long compile(Method method, Class<?> targetClass) {
+        PreAuthorize preAuthorize = AnnotatedElementUtils.findMergedAnnotation(method, PreAuthorize.class);
+        if (preAuthorize == null && targetClass != null) {
+            preAuthorize = AnnotatedElementUtils.findMergedAnnotation(targetClass, PreAuthorize.class);
+        }
+        if (preAuthorize == null) {
+            return FALLBACK;
+        }
+
+        Matcher expression = SIMPLE_EXPRESSION.matcher(preAuthorize.value());
+        if (!expression.matches()) {
+            return FALLBACK;
+        }
+        boolean roles = expression.group(1).endsWith("Role");
+        boolean any = expression.group(1).startsWith("hasAny");
+
+        long mask = 0L;
+        int count = 0;
+        Matcher argument = ARGUMENT.matcher(expression.group(2));
+        int end = 0;
+        while (argument.find() && argument.start() == end) {
+            String authority = argument.group(1);
+            if (roles && !authority.startsWith(ROLE_PREFIX)) {
+                authority = ROLE_PREFIX + authority;
+            }
+            long bit = AuthorityRegistry.register(authority);
+            if (bit == 0L) {
+                // the role has no bit of its own, only the full expression can decide
+                return FALLBACK;
+            }
+            mask |= bit;
+            count++;
+            end = argument.end();
+        }
+        // anything left over that isn't a quoted argument means the expression wasn't as simple as it looked
+        if (count == 0 || end != expression.group(2).length() || (!any && count > 1)) {
+            return FALLBACK;
+        }
+        return mask;
+    }
+
+}
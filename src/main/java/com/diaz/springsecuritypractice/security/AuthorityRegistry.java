@@ -0,0 +1,98 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    The roles our @PreAuthorize annotations check come from a small set of strings (ROLE_ADMIN, ROLE_USER ...).
+    AuthorityBitsAuthorizationManager registers each of them here at startup. The registry creates one
+    SimpleGrantedAuthority per registered role, hands out that same instance to every user who has the role
+    (interning) instead of allocating a new one each time a user is loaded, and gives the role its own bit position in
+    a long:
+
+        ROLE_ADMIN -> bit 0 -> 0b01
+        ROLE_USER  -> bit 1 -> 0b10
+
+    A user's roles then fit in one long (ROLE_ADMIN + ROLE_USER = 0b11), and "does this user have any of these roles?"
+    becomes a single bitwise AND instead of a loop comparing strings (see AuthorityBitsAuthorizationManager).
+
+    Only the annotations register roles. The roles column is free text, whatever a sign-up put there and no annotation
+    checks gets a plain SimpleGrantedAuthority of its own and no bit, so made-up roles can neither fill the registry
+    nor use up the 64 bits. Should an annotation ever name more than 64 roles, the ones past that have no bit (0) and
+    checks involving them fall back to Spring's regular expression based evaluation.
+
+    A role registered after a user was loaded (a method first checked at request time) isn't in that user's bits yet,
+    so the user's bits are only used while the registry hasn't grown since, see bitsOf.
+*/
+
+public final class AuthorityRegistry {
+
+    public static final int MAX_BITS = Long.SIZE;
+
+    private static final ConcurrentHashMap<String, Registered> AUTHORITIES = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_BIT = new AtomicInteger();
+
+    /* how many roles were registered, raised after a new role is visible in AUTHORITIES. Only ever raised: two threads
+       registering roles can finish in either order, the one that saw the smaller map must not take it back */
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private AuthorityRegistry() {
+    }
+
+    // the shared authority object of a registered role, a new one for any other role, never registers
+    public static GrantedAuthority intern(String authority) {
+        Registered registered = AUTHORITIES.get(authority);
+        return registered == null ? new SimpleGrantedAuthority(authority) : registered.authority;
+    }
+
+    // bit mask of a role an annotation checks, registering the role on first use, 0 once all 64 bits are taken
+    public static long register(String authority) {
+        return entry(authority).bit;
+    }
+
+    // changes whenever a role is registered, read it before computing bits with bitOf to know if they're still whole
+    public static int generation() {
+        return GENERATION.get();
+    }
+
+    // bit mask of an already registered role, 0 when the role is unknown or has no bit, never allocates
+    public static long bitOf(String authority) {
+        Registered registered = AUTHORITIES.get(authority);
+        return registered == null ? 0L : registered.bit;
+    }
+
+    // bit set of every authority the authentication holds
+    public static long bitsOf(Authentication authentication) {
+        if (authentication.getPrincipal() instanceof UserInfoUserDetails userDetails
+                && userDetails.getAuthorityGeneration() == GENERATION.get()) {
+            // computed once when the user was loaded, no role was registered since
+            return userDetails.getAuthorityBits();
+        }
+        long bits = 0L;
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            bits |= bitOf(authority.getAuthority());
+        }
+        return bits;
+    }
+
+    private static Registered entry(String authority) {
+        Registered registered = AUTHORITIES.get(authority);
+        if (registered != null) {
+            return registered;
+        }
+        // computeIfAbsent runs the function at most once per role, so two threads can't take two bits for one role
+        registered = AUTHORITIES.computeIfAbsent(authority, name -> {
+            int bit = NEXT_BIT.getAndIncrement();
+            return new Registered(new SimpleGrantedAuthority(name), bit < MAX_BITS ? 1L << bit : 0L);
+        });
+        GENERATION.accumulateAndGet(AUTHORITIES.size(), Math::max);
+        return registered;
+    }
+
+    private record Registered(GrantedAuthority authority, long bit) {
+    }
+
+}
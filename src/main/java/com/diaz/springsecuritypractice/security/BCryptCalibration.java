@@ -0,0 +1,63 @@
+package com.diaz.springsecuritypractice.security;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Picks the BCrypt strength (cost factor) for the machine we run on. Every step of the strength doubles the work of
+    a hash, so a few hashes are timed at a cheap probe strength and the time is doubled from there for as long as the
+    next step still fits in the target. The fastest of the timed hashes is used, it is the one least disturbed by
+    whatever else the machine was doing during startup.
+
+    The result stays between the configured minimum and maximum. On hardware too slow to reach the minimum within the
+    target the minimum wins, new hashes are never weaker than that.
+*/
+
+final class BCryptCalibration {
+
+    private static final Logger log = LoggerFactory.getLogger(BCryptCalibration.class);
+
+    private static final int PROBE_STRENGTH = 8;
+    // untimed hashes first, so the JIT has compiled BCrypt before we time it
+    private static final int WARMUP_HASHES = 3;
+    private static final int TIMED_HASHES = 5;
+    private static final String PROBE_PASSWORD = "calibration password";
+
+    private BCryptCalibration() {
+    }
+
+    // the highest strength between minStrength and maxStrength whose hash takes at most 'target' on this machine
+    static int strengthFor(Duration target, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(PROBE_STRENGTH);
+        for (int i = 0; i < WARMUP_HASHES; i++) {
+            probe.encode(PROBE_PASSWORD);
+        }
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_HASHES; i++) {
+            long start = System.nanoTime();
+            probe.encode(PROBE_PASSWORD);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+
+        int strength = PROBE_STRENGTH;
+        long nanos = fastest;
+        while (strength < maxStrength && nanos * 2 <= target.toNanos()) {
+            strength++;
+            nanos *= 2;
+        }
+        strength = Math.max(minStrength, Math.min(strength, maxStrength));
+
+        long estimated = fastest << (strength - PROBE_STRENGTH);
+        log.info("BCrypt strength {} takes about {} ms per hash on this machine (target {} ms)", strength,
+                TimeUnit.NANOSECONDS.toMillis(estimated), target.toMillis());
+        if (estimated > target.toNanos()) {
+            log.warn("Even the minimum BCrypt strength {} is slower than security.password.target-hash-time, logins "
+                    + "will take longer than the target", minStrength);
+        }
+        return strength;
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+
+/*
+    PasswordEncoder decorator that runs the expensive calls (encode and matches) of another encoder on the
+    HashingExecutor pool instead of the calling thread. Everything that uses the PasswordEncoder bean, like
+    DaoAuthenticationProvider during login and ProductService.addUserInfo during sign-up, goes through the pool's
+    concurrency limit and queue deadline without having to know about it. encodeAsync and matchesAsync are the same
+    calls for callers that can't block while the hash waits for a thread, like the reactive build.
+*/
+
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final HashingExecutor hashingExecutor;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, HashingExecutor hashingExecutor) {
+        this.delegate = delegate;
+        this.hashingExecutor = hashingExecutor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return hashingExecutor.run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return hashingExecutor.run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    // encode without blocking the caller, the future fails with HashingCapacityExceededException like encode would
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return hashingExecutor.submitAsync(() -> delegate.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return hashingExecutor.submitAsync(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    // only inspects the stored hash, cheap enough to stay on the calling thread
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    // the wrapped encoder, for callers that already run on the hashing pool and must not queue a second time
+    public PasswordEncoder getDelegate() {
+        return delegate;
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.diaz.springsecuritypractice.security;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    UserCache - a Spring Security interface that DaoAuthenticationProvider checks before calling our
+    UserDetailsService. On a hit the provider skips loadUserByUsername entirely, meaning no MySQL query and no
+    re-splitting of the roles string. If the password doesn't match the cached user, the provider reloads the user
+    from the database once before failing, so a password changed elsewhere can't lock someone out.
+
+    Bounded - the cache holds at most maxSize users. LinkedHashMap in access order keeps the least recently used user
+    at the head of the map, so when the cache is full that user is the one we evict (LRU).
+
+    Lock striping - an access order LinkedHashMap changes on every read (the user moves to the tail), so reads need a
+    lock just like writes. With one map every login on every thread would queue on the same lock. Instead the cache
+    is split into up to 64 stripes, each its own LinkedHashMap with its own lock and its share of maxSize, and a
+    username always goes to the same stripe (by its hash). Logins for different users then mostly take different
+    locks. The price is that LRU is per stripe: a full stripe evicts its own least recently used user even if another
+    stripe holds an older one. Stripes keep at least 16 users each, a small cache has fewer stripes (one when
+    maxSize < 32, which makes it an exact LRU).
+
+    TTL (time to live) - each entry also expires a fixed time after it was cached, so role changes made directly in
+    the database are picked up eventually even if nobody invalidates the entry.
+
+    LongAdder - a counter built for many threads incrementing at once. It spreads the updates over several cells
+    instead of making every thread fight over one AtomicLong, and sums the cells when read. The hit, miss and eviction
+    counts are published as security.user.cache.* metrics through Spring Boot Actuator.
+*/
+
+public class BoundedUserCache implements UserCache, MeterBinder {
+
+    private static final int MAX_STRIPES = 64;
+    private static final int MIN_STRIPE_SIZE = 16;
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // a power of two, so a username's stripe is its spread hash masked with stripes.length - 1
+    private final Stripe[] stripes;
+
+    public BoundedUserCache(int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("User cache max size must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, maxSize / MIN_STRIPE_SIZE)));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // the first maxSize % stripeCount stripes take one user more, so the capacities add up to maxSize
+            stripes[i] = new Stripe(maxSize / stripeCount + (i < maxSize % stripeCount ? 1 : 0));
+        }
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        long now = System.nanoTime();
+        Stripe stripe = stripeFor(username);
+        synchronized (stripe) {
+            Entry entry = stripe.get(username);
+            if (entry != null && now - entry.expiresAt < 0) {
+                hits.increment();
+                return entry.user;
+            }
+            if (entry != null) {
+                stripe.remove(username);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        Entry entry = new Entry(user, System.nanoTime() + ttlNanos);
+        Stripe stripe = stripeFor(user.getUsername());
+        synchronized (stripe) {
+            stripe.put(user.getUsername(), entry);
+        }
+    }
+
+    // called when a user is created or updated so the next login reads the fresh row from the database
+    @Override
+    public void removeUserFromCache(String username) {
+        Stripe stripe = stripeFor(username);
+        synchronized (stripe) {
+            stripe.remove(username);
+        }
+    }
+
+    // publishes the counters through Micrometer, Spring Boot calls this for every MeterBinder bean
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("security.user.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("security.user.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("security.user.cache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("security.user.cache.size", this, BoundedUserCache::size).register(registry);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    // the same spreading HashMap applies, the high bits of the hash also pick the stripe
+    private Stripe stripeFor(String username) {
+        int hash = username.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private record Entry(UserDetails user, long expiresAt) {
+    }
+
+    // guarded by itself, access order = true turns the map into an LRU list
+    private final class Stripe extends LinkedHashMap<String, Entry> {
+
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
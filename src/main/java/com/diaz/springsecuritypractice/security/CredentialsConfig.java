@@ -0,0 +1,158 @@
+package com.diaz.springsecuritypractice.security;
+import com.diaz.springsecuritypractice.repository.UserInfoRepository;
+import com.diaz.springsecuritypractice.service.UserInfoUserDetailsService;
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+
+/*
+    The beans that check credentials and issue tokens, shared by both web stacks: SecurityConfig wires them into the
+    servlet filter chain, ReactiveSecurityConfig (the reactive build, see README) into the WebFlux one.
+
+    PasswordEncoder - an interface in Spring Security used for hashing passwords. Rather than storing plain text
+    passwords, passwords are hashed, and the hashed value is stored
+
+    BCryptPasswordEncoder - Specific impl of PasswordEncoder uses strong hashing function to hash passwords. The
+    @Bean notation allows the Spring container manage the BCryptPasswordEncoder object. We wrap it in a
+    BoundedPasswordEncoder so hashing runs on the HashingExecutor pool rather than on the request threads.
+    Its strength is security.password.strength, or when that is 0, whatever makes one hash take about
+    security.password.target-hash-time on this machine (see BCryptCalibration).
+
+    DelegatingPasswordEncoder - stores hashes with the id of the encoder that made them, '{bcrypt}$2a$10$...', so the
+    hashing scheme can change later without breaking the hashes already stored. Hashes saved before the prefix existed
+    are still checked with BCrypt. After a successful login, a hash without the prefix or weaker than the current
+    strength is replaced in the background, see PasswordRehasher.
+
+    UserCache - sits in front of the UserDetailsService during logins. Repeat logins by the same user are answered
+    from memory instead of querying MySQL, see BoundedUserCache for the size and TTL limits.
+
+    Bearer tokens - tokens are HS256 JWTs signed with security.token.secret (see TokenService), every node sharing the
+    secret accepts the tokens of the others.
+*/
+
+@Configuration
+public class CredentialsConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(CredentialsConfig.class);
+
+    // see security.user-cache.* in application.properties
+    @Value("${security.user-cache.max-size:10000}")
+    private int userCacheMaxSize;
+
+    @Value("${security.user-cache.ttl:5m}")
+    private Duration userCacheTtl;
+
+    // see security.password.* in application.properties, strength 0 calibrates it against target-hash-time
+    @Value("${security.password.strength:0}")
+    private int passwordStrength;
+
+    @Value("${security.password.target-hash-time:100ms}")
+    private Duration targetHashTime;
+
+    @Value("${security.password.min-strength:10}")
+    private int minPasswordStrength;
+
+    @Value("${security.password.max-strength:14}")
+    private int maxPasswordStrength;
+
+    @Value("${security.password.rehash.queue-capacity:1000}")
+    private int rehashQueueCapacity;
+
+    // base64 encoded HMAC secret shared by every node, a random per-process key is used when it is left empty
+    @Value("${security.token.secret:}")
+    private String tokenSecret;
+
+    @Autowired
+    private UserInfoRepository userInfoRepository;
+
+    //Dedicated, bounded pool for BCrypt work, see security.hashing.* in application.properties
+    @Autowired
+    private HashingExecutor hashingExecutor;
+
+    @Bean
+    //Password hashing
+    public BoundedPasswordEncoder passwordEncoder() {
+        int strength = passwordStrength > 0 ? passwordStrength
+                : BCryptCalibration.strengthFor(targetHashTime, minPasswordStrength, maxPasswordStrength);
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        // hashes stored before they were prefixed with {bcrypt}
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return new BoundedPasswordEncoder(encoder, hashingExecutor);
+    }
+
+    @Bean
+    //Custom implementation of authentication with UserInfo entities
+    public UserDetailsService userDetailsService() {
+        return new UserInfoUserDetailsService();
+    }
+
+    @Bean
+    //Bounded TTL cache of loaded users, shared with ProductService so it can invalidate users it saves
+    public BoundedUserCache userCache() {
+        return new BoundedUserCache(userCacheMaxSize, userCacheTtl);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "security.password.rehash", name = "enabled", matchIfMissing = true)
+    //Replaces outdated password hashes after a successful login, off the login's thread
+    public PasswordRehasher passwordRehasher() {
+        return new PasswordRehasher(passwordEncoder(), userInfoRepository, userCache(), rehashQueueCapacity);
+    }
+
+    @Bean
+    //Key used to sign and verify bearer tokens, HS256 requires at least 256 bits
+    public SecretKey tokenSigningKey() {
+        byte[] secret;
+        if (tokenSecret.isBlank()) {
+            log.warn("security.token.secret is not set, tokens issued by this node won't be accepted by other nodes");
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+        } else {
+            secret = Base64.getDecoder().decode(tokenSecret);
+        }
+        if (secret.length < 32) {
+            throw new IllegalStateException("security.token.secret must be at least 256 bits (32 bytes) long");
+        }
+        return new SecretKeySpec(secret, "HmacSHA256");
+    }
+
+    @Bean
+    //Signs tokens in TokenService
+    public JwtEncoder jwtEncoder() {
+        return new NimbusJwtEncoder(new ImmutableSecret<>(tokenSigningKey()));
+    }
+
+    @Bean
+    //Turns the token's roles claim back into authorities, roles are stored with their ROLE_ prefix already
+    public JwtAuthenticationConverter jwtAuthenticationConverter() {
+        JwtGrantedAuthoritiesConverter authoritiesConverter = new JwtGrantedAuthoritiesConverter();
+        authoritiesConverter.setAuthoritiesClaimName(TokenService.ROLES_CLAIM);
+        authoritiesConverter.setAuthorityPrefix("");
+
+        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(authoritiesConverter);
+        return converter;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.diaz.springsecuritypractice.security;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+
+import java.io.IOException;
+
+/*
+    AuthenticationFailureHandler - decides what the client sees when a form login fails. The default behaviour is a
+    redirect back to /login?error, which is right for a wrong password but wrong for an overloaded server: the user
+    would just retry immediately. When the password hashing pool is saturated we answer 503 Service Unavailable with a
+    Retry-After header instead, every other failure keeps the default redirect.
+*/
+
+public class HashingAwareAuthenticationFailureHandler extends SimpleUrlAuthenticationFailureHandler {
+
+    public HashingAwareAuthenticationFailureHandler() {
+        super("/login?error");
+    }
+
+    @Override
+    public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+                                        AuthenticationException exception) throws IOException, ServletException {
+        if (exception instanceof HashingCapacityExceededException capacityExceeded) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(capacityExceeded.getRetryAfterSeconds()));
+            // set the status directly, sendError would forward to /error which isn't reachable without logging in
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.getWriter().write(capacityExceeded.getMessage());
+            return;
+        }
+        super.onAuthenticationFailure(request, response, exception);
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/*
+    Thrown when the password hashing pool can't take on more work, either because its queue is full or because a task
+    waited in the queue longer than the configured deadline. It's an AuthenticationException so that a login failing
+    for this reason flows through Spring Security's normal failure handling, where we turn it into
+    503 Service Unavailable with a Retry-After header instead of a "bad credentials" answer.
+*/
+
+public class HashingCapacityExceededException extends AuthenticationServiceException {
+
+    private final long retryAfterSeconds;
+
+    public HashingCapacityExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    // how long the client should wait before trying again, sent back in the Retry-After header
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
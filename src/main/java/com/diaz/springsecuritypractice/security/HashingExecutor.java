@@ -0,0 +1,207 @@
+package com.diaz.springsecuritypractice.security;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    BCrypt is deliberately slow, every hash or comparison burns roughly 100 ms of CPU. Run on Tomcat's request threads,
+    a burst of logins or sign-ups can occupy every worker thread with hashing, and cheap requests like
+    /products/{id} end up waiting in line behind them.
+
+    HashingExecutor moves that work onto its own small thread pool:
+
+        Concurrency limit - at most 'concurrency' hashes run at once (one per CPU core by default), hashing can never
+        use more CPU than that no matter how many logins arrive.
+
+        Bounded queue - at most 'queue-capacity' hashes wait for a free thread. When the queue is full new work is
+        rejected immediately (admission control) rather than piling up.
+
+        Queue deadline - a hash that sat in the queue longer than 'queue-deadline' is dropped, by then the client has
+        most likely given up and hashing for it would only delay everyone behind it.
+
+    Rejected work surfaces as HashingCapacityExceededException, which becomes 503 + Retry-After for the client.
+    Callers that must not block (the reactive build's event loop) use submitAsync and are called back when the hash is
+    done, a hash still queued at the deadline fails the same way once a hashing thread reaches it.
+    Queue depth, active threads, queue wait time and rejections are published as security.hashing.* metrics.
+*/
+
+@Component
+public class HashingExecutor {
+
+    @Value("${security.hashing.concurrency:0}")
+    private int concurrency;
+
+    @Value("${security.hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${security.hashing.queue-deadline:2s}")
+    private Duration queueDeadline;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor pool;
+    private long deadlineNanos;
+    private long retryAfterSeconds;
+    private Timer queueWait;
+    private Counter rejectedQueueFull;
+    private Counter rejectedDeadline;
+
+    @PostConstruct
+    public void start() {
+        int threads = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        this.deadlineNanos = queueDeadline.toNanos();
+        this.retryAfterSeconds = Math.max(1, (queueDeadline.toMillis() + 999) / 1000);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> {
+                    rejectedQueueFull.increment();
+                    throw new HashingCapacityExceededException("Password hashing queue is full", retryAfterSeconds);
+                });
+
+        this.queueWait = Timer.builder("security.hashing.queue.wait")
+                .description("Time password hashing tasks spend waiting for a free hashing thread")
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("security.hashing.rejected")
+                .tag("reason", "queue_full").register(meterRegistry);
+        this.rejectedDeadline = Counter.builder("security.hashing.rejected")
+                .tag("reason", "deadline").register(meterRegistry);
+        Gauge.builder("security.hashing.queue.depth", pool, executor -> executor.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("security.hashing.active", pool, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    // queues the task on the hashing pool, fails fast with HashingCapacityExceededException when the queue is full
+    public <T> Future<T> submit(Callable<T> task) {
+        HashingTask<T> hashingTask = new HashingTask<>(task);
+        pool.execute(hashingTask);
+        return hashingTask;
+    }
+
+    // like submit, but the returned future completes on the hashing thread, nothing has to wait on it
+    public <T> CompletableFuture<T> submitAsync(Callable<T> task) {
+        HashingTask<T> hashingTask = new HashingTask<>(task);
+        pool.execute(hashingTask);
+        return hashingTask.completion;
+    }
+
+    // runs the task on the hashing pool and blocks the caller until the result is ready or the deadline passes
+    public <T> T run(Callable<T> task) {
+        HashingTask<T> hashingTask = new HashingTask<>(task);
+        pool.execute(hashingTask);
+        try {
+            try {
+                return hashingTask.get(deadlineNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // still queued after the deadline, take it out of line. If a hashing thread got to it first let it
+                // finish, either way get() now has the outcome (or waits for the hash already running)
+                hashingTask.drop();
+                return hashingTask.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new AuthenticationServiceException("Password hashing failed", cause);
+        }
+    }
+
+    public int getConcurrency() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /* FutureTask that remembers when it was queued. When a hashing thread picks it up it records how long it waited,
+       and if that's longer than the deadline it fails instead of spending ~100 ms hashing for a caller that gave up.
+
+       A task leaves the queue exactly once, either run by a hashing thread or dropped past the deadline, by that
+       thread or by a caller that stopped waiting. Both sides can get there at the same moment, so the state is
+       moved out of QUEUED with a compare-and-set and only the side that wins it acts: a dropped task is never
+       hashed, a running one is never failed under its caller. */
+    private final class HashingTask<T> extends FutureTask<T> {
+
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DROPPED = 2;
+
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<T> completion = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        private HashingTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            long waited = System.nanoTime() - enqueuedAt;
+            queueWait.record(waited, TimeUnit.NANOSECONDS);
+            if (waited > deadlineNanos) {
+                drop();
+            } else if (state.compareAndSet(QUEUED, RUNNING)) {
+                super.run();
+            }
+        }
+
+        // fails the task with HashingCapacityExceededException unless it already started or was dropped before
+        private void drop() {
+            if (state.compareAndSet(QUEUED, DROPPED)) {
+                rejectedDeadline.increment();
+                setException(new HashingCapacityExceededException("Password hashing queue deadline exceeded",
+                        retryAfterSeconds));
+            }
+        }
+
+        // hands the outcome to submitAsync callers, run and submit callers read it from the FutureTask itself
+        @Override
+        protected void done() {
+            try {
+                completion.complete(get());
+            } catch (ExecutionException e) {
+                completion.completeExceptionally(e.getCause());
+            } catch (CancellationException | InterruptedException e) {
+                completion.completeExceptionally(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.diaz.springsecuritypractice.security;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+import static org.springframework.security.web.util.matcher.AntPathRequestMatcher.antMatcher;
+
+/*
+    Runs in the security filter chain just before UsernamePasswordAuthenticationFilter (the /login form) and turns
+    away login attempts over the LoginRateLimiter's limits with 429 Too Many Requests + Retry-After, before the user is
+    looked up or any password is hashed.
+
+        POST /login       - limited per client IP and per username (the form's 'username' field)
+        POST /auth/token  - limited per client IP here, the username is in the JSON body which AuthController reads,
+                            so the controller checks the per-username limit itself
+
+    This filter is created by SecurityConfig rather than declared as a bean. Spring Boot registers every Filter bean
+    with the servlet container as well, which would run it a second time outside the security chain.
+*/
+
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    private static final RequestMatcher FORM_LOGIN = antMatcher(HttpMethod.POST, "/login");
+    private static final RequestMatcher LOGIN_ATTEMPTS =
+            new OrRequestMatcher(FORM_LOGIN, antMatcher(HttpMethod.POST, "/auth/token"));
+
+    private final LoginRateLimiter rateLimiter;
+
+    public LoginRateLimitFilter(LoginRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !rateLimiter.isEnabled() || !LOGIN_ATTEMPTS.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // behind a proxy set server.forward-headers-strategy so this is the client's address, not the proxy's
+        long retryAfter = rateLimiter.acquireForIp(request.getRemoteAddr());
+        if (retryAfter == 0 && FORM_LOGIN.matches(request)) {
+            retryAfter = rateLimiter.acquireForUsername(request.getParameter("username"));
+        }
+        if (retryAfter > 0) {
+            tooManyRequests(response, retryAfter);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static void tooManyRequests(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("Too many login attempts, try again later");
+    }
+
+}
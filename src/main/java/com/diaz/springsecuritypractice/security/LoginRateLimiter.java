@@ -0,0 +1,154 @@
+package com.diaz.springsecuritypractice.security;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    Limits how often logins can be attempted, per client IP and per username. Every attempt that gets through costs a
+    database query and a ~100 ms BCrypt comparison, so credential stuffing (bots trying leaked passwords) is mostly a
+    CPU bill. Attempts over the limit are turned away before any of that work, see LoginRateLimitFilter.
+
+    Token bucket - each client has a bucket of 'requests' tokens that refills over 'period'. An attempt takes one
+    token, an empty bucket means the attempt is rejected until a token has refilled. We store a bucket as one long,
+    the time at which it will be completely full again (GCRA, the generic cell rate algorithm). Taking a token pushes
+    that time forward by period / requests, and the attempt is allowed as long as it doesn't end up more than one
+    'period' ahead of now. Updating a bucket is a single compare-and-set on that long, no locks.
+
+    Bounded - buckets live in a fixed array rather than a map, a client's bucket is picked by hashing its IP or
+    username. However many IPs an attacker rotates through, the memory stays at 'buckets' longs per scope. The price is
+    that two clients can land on the same bucket and share its tokens, which the array size keeps rare. The hash is
+    seeded randomly per process, so nobody can pick names that collide with someone else's bucket on purpose.
+
+    The per-username limit also slows down someone guessing one account's password from many IPs. It means an
+    attacker can make a user wait out the limit by failing logins in their name, keep it short enough for that to be a
+    nuisance at most.
+*/
+
+@Component
+public class LoginRateLimiter {
+
+    public static final String IP = "ip";
+    public static final String USERNAME = "username";
+
+    @Value("${security.login-rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${security.login-rate-limit.buckets:65536}")
+    private int bucketCount;
+
+    @Value("${security.login-rate-limit.per-ip.requests:30}")
+    private int ipRequests;
+
+    @Value("${security.login-rate-limit.per-ip.period:1m}")
+    private Duration ipPeriod;
+
+    @Value("${security.login-rate-limit.per-username.requests:10}")
+    private int usernameRequests;
+
+    @Value("${security.login-rate-limit.per-username.period:1m}")
+    private Duration usernamePeriod;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // nanoTime can be negative, bucket times are measured from here so an empty slot (0) always reads as full
+    private final long origin = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+
+    private Buckets ipBuckets;
+    private Buckets usernameBuckets;
+
+    @PostConstruct
+    public void init() {
+        // power of two so a bit mask picks the slot
+        int slots = Integer.highestOneBit(Math.max(2, bucketCount) - 1) << 1;
+        SecureRandom random = new SecureRandom();
+        this.ipBuckets = new Buckets(slots, ipRequests, ipPeriod, random.nextLong(), rejections(IP));
+        this.usernameBuckets = new Buckets(slots, usernameRequests, usernamePeriod, random.nextLong(),
+                rejections(USERNAME));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // takes a token from the client IP's bucket, returns 0 when the attempt may go ahead, otherwise the seconds to wait
+    public long acquireForIp(String ip) {
+        return enabled ? ipBuckets.acquire(ip == null ? "" : ip, now()) : 0;
+    }
+
+    // same for the username, names are compared case-insensitively like MySQL's default collation does
+    public long acquireForUsername(String username) {
+        return enabled ? usernameBuckets.acquire(username == null ? "" : username.toLowerCase(Locale.ROOT), now()) : 0;
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+
+    private Counter rejections(String scope) {
+        return Counter.builder("security.login.ratelimit.rejected")
+                .description("Login attempts turned away by the login rate limiter")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    // one scope's buckets, each slot holds the time its bucket is full again. The caller passes the time in, so
+    // LoginRateLimiterTest can step through it
+    static final class Buckets {
+
+        private final AtomicLongArray fullAt;
+        private final int mask;
+        private final long interval;
+        private final long period;
+        private final long seed;
+        private final Counter rejected;
+
+        Buckets(int slots, int requests, Duration period, long seed, Counter rejected) {
+            this.fullAt = new AtomicLongArray(slots);
+            this.mask = slots - 1;
+            this.period = period.toNanos();
+            this.interval = this.period / Math.max(1, requests);
+            this.seed = seed;
+            this.rejected = rejected;
+        }
+
+        long acquire(String key, long now) {
+            int slot = slot(key);
+            while (true) {
+                long current = fullAt.get(slot);
+                long next = Math.max(current, now) + interval;
+                long ahead = next - now;
+                if (ahead > period) {
+                    rejected.increment();
+                    // seconds until one token has refilled, rounded up
+                    return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(ahead - period + 999_999_999L));
+                }
+                if (fullAt.compareAndSet(slot, current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        // seeded FNV-1a over the key's characters
+        private int slot(String key) {
+            long hash = 0xcbf29ce484222325L ^ seed;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 32;
+            return (int) hash & mask;
+        }
+
+    }
+
+}
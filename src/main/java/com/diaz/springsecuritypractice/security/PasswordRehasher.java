@@ -0,0 +1,121 @@
+package com.diaz.springsecuritypractice.security;
+import com.diaz.springsecuritypractice.repository.UserInfoRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Upgrades a user's stored password hash after a successful login, when it is weaker than the hash we would store
+    today: a lower BCrypt strength than security.password.strength, or a hash saved before hashes carried their
+    {bcrypt} prefix (PasswordEncoder.upgradeEncoding decides). A login is the only time we see the plain password, so
+    that is when it has to happen.
+
+    The login doesn't wait for it. DaoAuthenticationProvider can upgrade hashes itself, but it hashes and saves on the
+    request thread, which doubles that login's BCrypt time. Here the upgrade is queued and a single 'password-rehash'
+    thread hashes it through the PasswordEncoder, so it waits for a HashingExecutor thread like a login would but
+    never takes more than one of them. The new hash is saved with UserInfoRepository.updatePassword, which only
+    replaces the hash the user logged in with, a password changed in the meantime is left alone. The user's cached
+    UserDetails is evicted so the next login reads the new hash.
+
+    Upgrades that don't fit into the queue (security.password.rehash.queue-capacity), or that the hashing pool turns
+    away because logins keep it busy, are dropped, the user's next login tries again. Outcomes are counted in
+    security.password.rehash.
+*/
+
+public class PasswordRehasher implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordRehasher.class);
+
+    private final PasswordEncoder encoder;
+    private final UserInfoRepository userInfoRepository;
+    private final UserCache userCache;
+    private final ThreadPoolExecutor executor;
+
+    // users with an upgrade queued or running, logging in again meanwhile doesn't queue a second one
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder upgraded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public PasswordRehasher(PasswordEncoder encoder, UserInfoRepository userInfoRepository, UserCache userCache,
+                            int queueCapacity) {
+        this.encoder = encoder;
+        this.userInfoRepository = userInfoRepository;
+        this.userCache = userCache;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-rehash");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // queues an upgrade of the user's hash if it is weaker than a new one would be, never blocks the caller
+    public void rehashIfNeeded(String username, String rawPassword, String storedHash) {
+        if (storedHash == null || !encoder.upgradeEncoding(storedHash) || !pending.add(username)) {
+            return;
+        }
+        try {
+            executor.execute(() -> rehash(username, rawPassword, storedHash));
+        } catch (RejectedExecutionException e) {
+            pending.remove(username);
+            dropped.increment();
+        }
+    }
+
+    // upgrades still in the queue are dropped, their users are upgraded on a later login
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        outcome(registry, "upgraded", upgraded);
+        outcome(registry, "dropped", dropped);
+        outcome(registry, "stale", stale);
+        outcome(registry, "failed", failed);
+    }
+
+    private void rehash(String username, String rawPassword, String storedHash) {
+        try {
+            String newHash = encoder.encode(rawPassword);
+            if (userInfoRepository.updatePassword(username, storedHash, newHash) == 1) {
+                userCache.removeUserFromCache(username);
+                upgraded.increment();
+            } else {
+                // the password changed or the user is gone since the login read it
+                stale.increment();
+            }
+        } catch (HashingCapacityExceededException e) {
+            // logins are keeping the hashing pool busy, they come first
+            dropped.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.warn("Could not upgrade the password hash of user {}", username, e);
+        } finally {
+            pending.remove(username);
+        }
+    }
+
+    private static void outcome(MeterRegistry registry, String outcome, LongAdder count) {
+        FunctionCounter.builder("security.password.rehash", count, LongAdder::sum)
+                .description("Password hash upgrades after a login, by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+}
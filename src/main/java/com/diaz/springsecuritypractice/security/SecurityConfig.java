@@ -1,18 +1,41 @@
 package com.diaz.springsecuritypractice.security;
-import com.diaz.springsecuritypractice.service.UserInfoUserDetailsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import org.springframework.aop.Advisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
-import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
-import org.springframework.security.config.Customizer;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.web.FilterChainProxy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+
+import javax.crypto.SecretKey;
 
 /*
     The Spring IoC (inversion of control) container is a core component of Spring Framework. It
@@ -31,11 +54,9 @@ import org.springframework.security.web.SecurityFilterChain;
     custom configuration is ignored. This annotation is crucial for taking full control of application's security
     configuration in a declarative and programmable way using Spring Security.
 
-    PasswordEncoder - an interface in Spring Security used for hashing passwords. Rather than storing plain text
-    passwords, passwords are hashed, and the hashed value is stored
-
-    BCryptPasswordEncoder - Specific impl of PasswordEncoder uses strong hashing function to hash passwords. The
-    @Bean notation allows the Spring container manage the BCryptPasswordEncoder object.
+    PasswordEncoder, UserDetailsService, UserCache and the token signing key are declared in CredentialsConfig, the
+    reactive build (ReactiveSecurityConfig) uses the same ones. This class is the servlet stack's half and is skipped
+    when the application runs as a reactive web application (spring.main.web-application-type=reactive).
 
     UserDetails - interface that provides core user information that spring Security needs to
     perform authentication and authorization processes. Implementations of this interface are used
@@ -56,26 +77,100 @@ import org.springframework.security.web.SecurityFilterChain;
     handle endpoints. This allows us to restrict which users are allowed at certain endpoints via authentication.
     For when testing head back to the /login page to ensure you change to correct user because in memory the endpoint
     will recognize a failed login and stay at that point unless a new user manually logs in.
+    prePostEnabled is switched off so that we can register @PreAuthorize support ourselves, backed by
+    AuthorityBitsAuthorizationManager, which turns simple hasAuthority/hasRole expressions into bit mask checks.
 
     DaoAuthenticationProvider - This is a specific type of AuthenticationProvider that uses a Data Access Object (DAO)
     to retrieve user details from your database (or another persistence mechanism).
 
+    Bearer tokens - besides the form login, clients can POST their credentials to /auth/token and receive a signed JWT
+    (see TokenService). The oauth2ResourceServer().jwt() part of the filter chain adds a filter that reads the
+    'Authorization: Bearer' header, verifies the token's HMAC signature and expiry with the JwtDecoder, and builds the
+    Authentication straight from the token's roles claim. These requests never touch the HTTP session, the database or
+    BCrypt, which lets us run several nodes without sticky sessions as long as they share security.token.secret.
+
+    UserCache - sits in front of the UserDetailsService inside DaoAuthenticationProvider, see CredentialsConfig.
+
+    Rate limiting - LoginRateLimitFilter sits in front of the login form and /auth/token and rejects clients that try
+    to log in too often with 429, so password guessing bots can't make us run BCrypt for every guess.
+
+    Metrics - each stage of a login, every security filter and every @PreAuthorize check records its latency in
+    Micrometer (AuthenticationMetrics, TimedFilterChainDecorator), served to Prometheus at /actuator/prometheus. That
+    endpoint is open on a separate management port only, on the application port it needs ROLE_ADMIN.
+
 */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSecurity
-@EnableMethodSecurity
+@EnableMethodSecurity(prePostEnabled = false)
 public class SecurityConfig {
 
+    @Value("${security.token.issuer:spring-security-practice}")
+    private String tokenIssuer;
+
+    // -1 when the actuator endpoints share the application port
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    // the shared beans from CredentialsConfig
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private BoundedUserCache userCache;
+
+    @Autowired
+    private SecretKey tokenSigningKey;
+
+    @Autowired
+    private JwtAuthenticationConverter jwtAuthenticationConverter;
+
+    // only there while security.password.rehash.enabled is true
+    @Autowired(required = false)
+    private PasswordRehasher passwordRehasher;
+
+    //Per-stage login timers, see AuthenticationMetrics
+    @Autowired
+    private AuthenticationMetrics authenticationMetrics;
+
+    //Login attempt limits per client IP and username, see security.login-rate-limit.* in application.properties
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    /* Method security beans are declared static and as infrastructure beans, Spring creates them very early so that
+    every other bean (our controllers included) can be proxied by them. */
     @Bean
-    //Password hashing
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static AuthorityBitsAuthorizationManager authorityBitsAuthorizationManager(
+            ObjectProvider<AuthenticationMetrics> metrics) {
+        return new AuthorityBitsAuthorizationManager(metrics);
     }
 
     @Bean
-    //Custom implementation of authentication with UserInfo entities
-    public UserDetailsService userDetailsService() {
-        return new UserInfoUserDetailsService();
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    //Runs before every @PreAuthorize method and asks our bit mask manager for a decision
+    static Advisor preAuthorizeAuthorizationMethodInterceptor(AuthorityBitsAuthorizationManager manager) {
+        return AuthorizationManagerBeforeMethodInterceptor.preAuthorize(manager);
+    }
+
+    @Bean
+    //Times every security filter on its own, see TimedFilterChainDecorator
+    static BeanPostProcessor filterChainTimingPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof FilterChainProxy filterChainProxy) {
+                    filterChainProxy.setFilterChainDecorator(new TimedFilterChainDecorator(meterRegistry));
+                }
+                return bean;
+            }
+        };
     }
 
     @Bean
@@ -86,32 +181,85 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         // Configuration to specify security rules for URL access within the application
 
+                        /* Streaming responses (e.g. NDJSON from /products/all) finish on an ASYNC dispatch. The
+                           original request was already authorized, so the async dispatch doesn't need checking again */
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         /* Grants public access to the welcome page, allowing anyone to access it
                            without needing to log in */
                         .requestMatchers("/products/welcome", "/products/new").permitAll()
 
+                        // token login must be reachable by anyone, it's where clients go to get authenticated
+                        .requestMatchers("/auth/token").permitAll()
+
+                        // load balancers poll health without logging in
+                        .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+
+                        /* Prometheus scrapes without logging in only on a separate management port
+                           (management.server.port), which is kept off the public network. On the application port
+                           the metrics are for admins, like the other actuator endpoints */
+                        .requestMatchers(new AndRequestMatcher(EndpointRequest.to(PrometheusScrapeEndpoint.class),
+                                request -> onManagementPort(request.getLocalPort())))
+                        .permitAll()
+                        .requestMatchers(EndpointRequest.toAnyEndpoint()).hasAuthority("ROLE_ADMIN")
+
                         /* Requires that users must be authenticated to access any other endpoints under the
                           '/products' path, except for the welcome page This ensures that for URLs matching
                           '/products/**', a user must have the appropriate authentication to access those resources */
                         .requestMatchers("/products/**").authenticated()
                 )
+                // turns away login attempts over the rate limit before any user lookup or password hashing
+                .addFilterBefore(new LoginRateLimitFilter(loginRateLimiter), UsernamePasswordAuthenticationFilter.class)
                 // will display default spring login page for users that need to be authenticated for certain endpoints
-                .formLogin(Customizer.withDefaults());
+                // answers 503 + Retry-After instead of /login?error when the password hashing pool is saturated
+                .formLogin(form -> form.failureHandler(new HashingAwareAuthenticationFailureHandler()))
+                // stateless alternative to the session, authenticates requests carrying a signed bearer token
+                .oauth2ResourceServer(oauth2 -> oauth2
+                        .jwt(jwt -> jwt.jwtAuthenticationConverter(jwtAuthenticationConverter)));
 
         return http.build();
     }
 
+    @Bean
+    //Verifies the signature, expiry and issuer of incoming bearer tokens
+    public JwtDecoder jwtDecoder() {
+        NimbusJwtDecoder decoder = NimbusJwtDecoder.withSecretKey(tokenSigningKey)
+                .macAlgorithm(MacAlgorithm.HS256)
+                .build();
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(tokenIssuer));
+        return decoder;
+    }
+
     /* When a user tries to log in, this configuration ensures that, the application will use your UserDetailsService
     to fetch user details from the specified source (like a database).  this method is your way of telling Spring
     Security exactly how to authenticate users, including where to get user details and how to handle passwords. */
     @Bean
     public AuthenticationProvider authenticationProvider(){
-        DaoAuthenticationProvider authenticationProvider= new DaoAuthenticationProvider();
-        authenticationProvider.setUserDetailsService(userDetailsService());
-        authenticationProvider.setPasswordEncoder(passwordEncoder());
+        TimedAuthenticationProvider authenticationProvider = new TimedAuthenticationProvider(authenticationMetrics);
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+        authenticationProvider.setUserCache(userCache);
+        if (passwordRehasher != null) {
+            authenticationProvider.setPasswordRehasher(passwordRehasher);
+        }
         return authenticationProvider;
     }
 
+    /* Exposes our provider as an AuthenticationManager bean so AuthController can check credentials for /auth/token
+    the same way the login form does. The event publisher (Spring Boot's default) announces every success and failure
+    as an application event, which AuthenticationAuditListener writes to the audit log. */
+    @Bean
+    public AuthenticationManager authenticationManager(AuthenticationEventPublisher authenticationEventPublisher) {
+        ProviderManager authenticationManager = new ProviderManager(authenticationProvider());
+        authenticationManager.setAuthenticationEventPublisher(authenticationEventPublisher);
+        return authenticationManager;
+    }
+
+    // true for a request that came in on a management port of its own, never when the actuator shares the app's port
+    private boolean onManagementPort(int localPort) {
+        return managementPort > 0 && managementPort != serverPort && localPort == managementPort;
+    }
+
 }
 
 /*
@@ -0,0 +1,114 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/*
+    DaoAuthenticationProvider that times the password check and the login as a whole (see AuthenticationMetrics),
+    the user lookup itself is timed in UserInfoUserDetailsService.
+
+    Normally the provider turns "no such user" into the same BadCredentialsException as a wrong password, so callers
+    can't probe which names exist. We need to tell the two apart for the outcome tag, so the provider is told to let
+    UsernameNotFoundException through and we translate it into BadCredentialsException ourselves after recording it.
+    Callers still see the exact same exception and message either way.
+
+    A successful login also hands the password to the PasswordRehasher (when one is set), which replaces the stored
+    hash in the background if it is outdated. The provider's own UserDetailsPasswordService hook isn't used for this,
+    it would hash and save on the login's thread.
+
+    When the user came from the UserCache and the password check fails, the base class reloads the user from the
+    database and checks again, in case the cached hash was stale. It does that for any AuthenticationException, also
+    for a HashingCapacityExceededException, which would mean a database read and a second wait on the saturated
+    hashing pool. additionalAuthenticationChecks wraps that one in an unchecked exception the base class lets through,
+    and authenticate unwraps it again, so a full pool fails the login right away (the reactive manager does the same,
+    it only retries after BadCredentialsException).
+*/
+
+public class TimedAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final AuthenticationMetrics metrics;
+    private PasswordRehasher passwordRehasher;
+
+    public TimedAuthenticationProvider(AuthenticationMetrics metrics) {
+        this.metrics = metrics;
+        setHideUserNotFoundExceptions(false);
+    }
+
+    public void setPasswordRehasher(PasswordRehasher passwordRehasher) {
+        this.passwordRehasher = passwordRehasher;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        long start = System.nanoTime();
+        try {
+            Authentication result = super.authenticate(authentication);
+            metrics.record(AuthenticationMetrics.AUTHENTICATION, AuthenticationMetrics.SUCCESS, start);
+            return result;
+        } catch (UsernameNotFoundException e) {
+            metrics.record(AuthenticationMetrics.AUTHENTICATION, AuthenticationMetrics.UNKNOWN_USER, start);
+            throw new BadCredentialsException(
+                    messages.getMessage("AbstractUserDetailsAuthenticationProvider.badCredentials", "Bad credentials"));
+        } catch (HashingCapacityFailure e) {
+            metrics.record(AuthenticationMetrics.AUTHENTICATION, AuthenticationMetrics.ERROR, start);
+            throw e.getCause();
+        } catch (BadCredentialsException e) {
+            metrics.record(AuthenticationMetrics.AUTHENTICATION, AuthenticationMetrics.BAD_CREDENTIALS, start);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.record(AuthenticationMetrics.AUTHENTICATION, AuthenticationMetrics.ERROR, start);
+            throw e;
+        }
+    }
+
+    // PasswordEncoder.matches against the stored hash, including the wait for a thread on the hashing pool
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                  UsernamePasswordAuthenticationToken authentication)
+            throws AuthenticationException {
+        long start = System.nanoTime();
+        try {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+            metrics.record(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.SUCCESS, start);
+        } catch (BadCredentialsException e) {
+            metrics.record(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.BAD_CREDENTIALS, start);
+            throw e;
+        } catch (HashingCapacityExceededException e) {
+            metrics.record(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.ERROR, start);
+            // not an AuthenticationException, so the base class doesn't reload the user and hash a second time
+            throw new HashingCapacityFailure(e);
+        } catch (RuntimeException e) {
+            metrics.record(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.ERROR, start);
+            throw e;
+        }
+    }
+
+    // the password has just been checked against user.getPassword(), the one moment we know it in plain text
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+                                                         UserDetails user) {
+        if (passwordRehasher != null && authentication.getCredentials() != null) {
+            passwordRehasher.rehashIfNeeded(user.getUsername(), authentication.getCredentials().toString(),
+                    user.getPassword());
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+
+    // carries a HashingCapacityExceededException past the base class's retry, authenticate throws the cause again
+    private static final class HashingCapacityFailure extends RuntimeException {
+
+        private HashingCapacityFailure(HashingCapacityExceededException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized HashingCapacityExceededException getCause() {
+            return (HashingCapacityExceededException) super.getCause();
+        }
+    }
+
+}
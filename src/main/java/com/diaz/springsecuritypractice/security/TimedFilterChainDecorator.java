@@ -0,0 +1,129 @@
+package com.diaz.springsecuritypractice.security;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.security.web.FilterChainProxy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+    FilterChainDecorator - the hook FilterChainProxy uses to run a request through the filters of a SecurityFilterChain.
+    This one wraps every filter so its time is recorded in the 'security.filter' timer, tagged with the filter's class
+    name (e.g. BearerTokenAuthenticationFilter, AuthorizationFilter).
+
+    Filters call each other: a filter's doFilter only returns after every filter behind it (and the controller) has
+    finished. Timing doFilter alone would therefore charge each filter with the whole request. We also time the call the
+    filter makes to the rest of the chain and subtract it, so each timer holds only the time spent in that filter.
+
+    This takes the place of Spring Security's ObservationFilterChainDecorator, which only reports the chain as a whole.
+*/
+
+public class TimedFilterChainDecorator implements FilterChainProxy.FilterChainDecorator {
+
+    private final FilterChainProxy.VirtualFilterChainDecorator delegate =
+            new FilterChainProxy.VirtualFilterChainDecorator();
+    private final ObjectProvider<MeterRegistry> registry;
+
+    // the timed copy of each SecurityFilterChain's filter list, the lists never change after startup
+    private volatile Map<List<Filter>, List<Filter>> timedFilters = new IdentityHashMap<>();
+
+    public TimedFilterChainDecorator(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public FilterChain decorate(FilterChain original) {
+        return delegate.decorate(original);
+    }
+
+    @Override
+    public FilterChain decorate(FilterChain original, List<Filter> filters) {
+        List<Filter> timed = timedFilters.get(filters);
+        if (timed == null) {
+            timed = wrap(filters);
+        }
+        return delegate.decorate(original, timed);
+    }
+
+    // wraps a filter list seen for the first time, copy on write so requests read the map without locking
+    private synchronized List<Filter> wrap(List<Filter> filters) {
+        List<Filter> timed = timedFilters.get(filters);
+        if (timed != null) {
+            return timed;
+        }
+        MeterRegistry meterRegistry = registry.getObject();
+        List<Filter> wrapped = new ArrayList<>(filters.size());
+        for (Filter filter : filters) {
+            wrapped.add(new TimedFilter(filter, Timer.builder("security.filter")
+                    .description("Time spent in a security filter, excluding the filters after it")
+                    .tag("filter", filter.getClass().getSimpleName())
+                    .register(meterRegistry)));
+        }
+        Map<List<Filter>, List<Filter>> copy = new IdentityHashMap<>(timedFilters);
+        copy.put(filters, List.copyOf(wrapped));
+        timedFilters = copy;
+        return copy.get(filters);
+    }
+
+    private static final class TimedFilter implements Filter {
+
+        private final Filter filter;
+        private final Timer timer;
+
+        private TimedFilter(Filter filter, Timer timer) {
+            this.filter = filter;
+            this.timer = timer;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            DownstreamChain downstream = new DownstreamChain(chain);
+            long start = System.nanoTime();
+            try {
+                filter.doFilter(request, response, downstream);
+            } finally {
+                timer.record(System.nanoTime() - start - downstream.nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return filter.toString();
+        }
+
+    }
+
+    // the rest of the chain as seen by one filter, adds up how long the filters after it took
+    private static final class DownstreamChain implements FilterChain {
+
+        private final FilterChain chain;
+        private long nanos;
+
+        private DownstreamChain(FilterChain chain) {
+            this.chain = chain;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+            long start = System.nanoTime();
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/*
+    JWT (JSON Web Token) - a compact, signed JSON document of claims, e.g. who the user is (sub), when the token
+    expires (exp) and in our case which roles the user has. The signature is an HMAC of the header and claims made with
+    a secret key only our servers know. Anyone can read a JWT, but nobody can change a claim without breaking the
+    signature.
+
+    Because the roles travel inside the token, a request carrying it can be authorized by checking the signature and
+    the expiry alone. There is no HTTP session to look up, no UserInfoRepository query and no BCrypt comparison, so any
+    node sharing the same secret can serve any request and we don't need sticky sessions.
+
+    The expensive work (database lookup + BCrypt) happens once in /auth/token, after that the token is the proof.
+*/
+
+@Service
+public class TokenService {
+
+    public static final String ROLES_CLAIM = "roles";
+
+    @Autowired
+    private JwtEncoder jwtEncoder;
+
+    @Value("${security.token.issuer:spring-security-practice}")
+    private String issuer;
+
+    @Value("${security.token.ttl:15m}")
+    private Duration ttl;
+
+    // signs a token for an already authenticated user, embedding the user's authorities in the roles claim
+    public String issue(Authentication authentication) {
+        Instant now = Instant.now();
+        List<String> roles = authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .issuer(issuer)
+                .subject(authentication.getName())
+                .issuedAt(now)
+                .expiresAt(now.plus(ttl))
+                .claim(ROLES_CLAIM, roles)
+                .build();
+        JwsHeader header = JwsHeader.with(MacAlgorithm.HS256).build();
+
+        return jwtEncoder.encode(JwtEncoderParameters.from(header, claims)).getTokenValue();
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+}
@@ -1,14 +1,12 @@
 package com.diaz.springsecuritypractice.security;
+import com.diaz.springsecuritypractice.dto.UserCredentials;
 import com.diaz.springsecuritypractice.entity.UserInfo;
 import com.diaz.springsecuritypractice.service.UserInfoUserDetailsService;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /*
     This is very correlated with our UserInfoUserDetailsService class. Now we are working on the customization of the
@@ -16,7 +14,10 @@ import java.util.stream.Collectors;
     UserDetailsService interface, so we can authenticate users and their roles via persistence data from DB.
 
     SimpleGrantedAuthority -  objects are used because they provide a simple, straightforward way to represent user
-    roles in a manner that is fully compatible with Spring Security's authorization mechanisms.
+    roles in a manner that is fully compatible with Spring Security's authorization mechanisms. The objects come from
+    AuthorityRegistry, which keeps one shared instance per role our @PreAuthorize annotations check, and each user also
+    carries those roles as a bit set (authorityBits) so the checks are a single AND, see
+    AuthorityBitsAuthorizationManager. Roles no annotation checks get an object of their own and no bit.
 */
 
 
@@ -29,17 +30,47 @@ public class UserInfoUserDetails implements UserDetails {
     private String name;
     private String password;
     private List<GrantedAuthority> authorityList;
+    private long authorityBits;
+    private int authorityGeneration;
 
     public UserInfoUserDetails(UserInfo userInfo) {
-        this.name = userInfo.getName();
-        this.password = userInfo.getPassword();
+        this(userInfo.getName(), userInfo.getPassword(), userInfo.getRoles());
+    }
+
+    // built from the login projection, see UserInfoRepository.findCredentialsByName
+    public UserInfoUserDetails(UserCredentials credentials) {
+        this(credentials.getName(), credentials.getPassword(), credentials.getRoles());
+    }
+
+    private UserInfoUserDetails(String name, String password, String roleList) {
+        this.name = name;
+        this.password = password;
 
         /* converts a comma-separated String of roles into a List of SimpleGrantedAuthority objects,
              which can be used in Spring Security for authorization purposes. Used for users w/ one or
-             multiple roles.*/
-        this.authorityList = Arrays.stream(userInfo.getRoles().split(","))
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+             multiple roles. Registered roles are the registry's shared instances, not new objects per user.*/
+        String[] roles = roleList.split(",");
+        GrantedAuthority[] authorities = new GrantedAuthority[roles.length];
+        // read first, a role registered while the bits are computed leaves them marked as outdated
+        this.authorityGeneration = AuthorityRegistry.generation();
+        long bits = 0L;
+        for (int i = 0; i < roles.length; i++) {
+            String role = roles[i].trim();
+            authorities[i] = AuthorityRegistry.intern(role);
+            bits |= AuthorityRegistry.bitOf(role);
+        }
+        this.authorityList = List.of(authorities);
+        this.authorityBits = bits;
+    }
+
+    // the user's roles as a bit set, one bit per role assigned by AuthorityRegistry
+    public long getAuthorityBits() {
+        return this.authorityBits;
+    }
+
+    // AuthorityRegistry.generation() when the bits were computed
+    public int getAuthorityGeneration() {
+        return this.authorityGeneration;
     }
 
     @Override
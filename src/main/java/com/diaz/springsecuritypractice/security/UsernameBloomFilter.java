@@ -0,0 +1,319 @@
+package com.diaz.springsecuritypractice.security;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/*
+    Bloom filter - a compact, in-memory answer to "could a user with this name exist?". Each name sets a handful of
+    bits in a large bit array, picked by hashing the name. To test a name we check its bits: if any of them is unset
+    the name was never added (a definite no), if all are set the name was probably added. "Probably" because other
+    names may have set those same bits, how often that happens is the false positive rate we size the array for.
+
+    UserInfoUserDetailsService asks the filter before querying the database, so a login with a name that doesn't
+    exist (typos, but mostly bots trying lists of usernames) fails without a database round trip. The login still runs
+    the same dummy password comparison DaoAuthenticationProvider does for unknown users, so a response doesn't come
+    back faster and give away that the name doesn't exist.
+
+    The filter must never answer "no" for a name the database would find, otherwise that user couldn't log in:
+
+        - it is filled with every name in user_info at startup, and a name is added before it is saved (sign-up and
+          bulk import), so a new user is in the filter before its row exists
+        - users saved by other nodes sharing the database, or inserted straight into user_info, are picked up by a
+          periodic scan of rows with an id above the highest one seen, it starts a little below that id to catch rows
+          from transactions that committed late
+        - the scan runs every refresh-interval, so before a "no" is given the highest id in user_info (on the
+          primary) is compared with the highest one the filter has read. When the table is ahead the new rows are
+          read first and the name is checked again. That query runs at most once per max-staleness, the "no"s in
+          between trust the filter as it is: a user saved elsewhere can be turned away for up to max-staleness after
+          its row was committed (0 compares on every "no", one indexed query per unknown name)
+        - MySQL compares names case and accent insensitively by default, so names are lowercased and stripped of
+          trailing spaces before hashing, 'Devin' and 'devin' set the same bits
+        - utf8mb4_0900_ai_ci also treats non-ASCII letters as equal to ASCII ones, sometimes to several ('é' = 'e',
+          'ß' = 'ss', 'æ' = 'ae'), and only the collation itself knows every case. So the filter only answers for
+          ASCII names, a login with any other name is always a "maybe" and the database decides. A saved name with
+          other letters is added the way an ASCII login for it would look: accents removed (NFKD) and the letters
+          NFKD leaves alone expanded, 'Straße' as 'strasse'. A name that still isn't ASCII after that can only be
+          equal to names that aren't either, which never get a "no", so it isn't added at all
+
+    Names are never removed, a deleted user only makes the filter a little less effective until the next restart.
+
+    With security.username-filter.load-in-background the first scan runs on the refresh thread instead of during
+    startup, until it has finished every name is a "maybe" and logins query the database as they would without the
+    filter. A failed first scan is tried again every refresh-interval.
+*/
+
+@Component
+public class UsernameBloomFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(UsernameBloomFilter.class);
+
+    // how far below the highest id seen the periodic scan starts, ids handed out but committed late are still read
+    private static final int REFRESH_OVERLAP = 1000;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    // lowercase letters the collation equates with ASCII letters that NFKD doesn't decompose
+    private static final Map<Character, String> EXPANSIONS = Map.of(
+            'ß', "ss", 'æ', "ae", 'œ', "oe", 'ø', "o", 'đ', "d",
+            'ð', "d", 'þ', "th", 'ł', "l", 'ħ', "h", 'ı', "i");
+
+    @Value("${security.username-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${security.username-filter.expected-users:1000000}")
+    private long expectedUsers;
+
+    @Value("${security.username-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${security.username-filter.refresh-interval:10s}")
+    private Duration refreshInterval;
+
+    @Value("${security.username-filter.load-in-background:false}")
+    private boolean loadInBackground;
+
+    // how long a "no" may go without comparing the filter with user_info's highest id, see the class comment
+    @Value("${security.username-filter.max-staleness:1s}")
+    private Duration maxStaleness;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AtomicLongArray bits;
+    private long bitCount;
+    private int hashCount;
+
+    // the filter says "maybe" to everything until the first scan of user_info has finished
+    private volatile boolean ready;
+    private volatile long highestId;
+    private ScheduledExecutorService refresher;
+
+    // System.nanoTime() from which a "no" compares the filter with user_info again, guarded by this
+    private long nextCatchUp;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // standard Bloom filter sizing: m = -n ln(p) / ln(2)^2 bits and k = m / n ln(2) hash functions
+        double perUser = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bitCount = Math.max(64, (long) Math.ceil(expectedUsers * perUser));
+        this.hashCount = Math.max(1, (int) Math.round(perUser * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        this.nextCatchUp = System.nanoTime();
+        if (!loadInBackground) {
+            load();
+        }
+
+        Gauge.builder("security.username.filter.fill", bits, UsernameBloomFilter::fillRatio)
+                .description("Share of the username filter's bits that are set")
+                .register(meterRegistry);
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "username-filter-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, loadInBackground ? 0 : interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    // false only when no user with this name can exist
+    public boolean mightContain(String name) {
+        // only an ASCII name gets a "no", see the class comment
+        if (!enabled || !ready || name == null || !isAscii(name)) {
+            return true;
+        }
+        String key = normalize(name);
+        if (contains(key)) {
+            return true;
+        }
+        try {
+            return catchUp() && contains(key);
+        } catch (RuntimeException e) {
+            // can't tell whether the filter is behind, the database decides (and most likely fails the same way)
+            return true;
+        }
+    }
+
+    // records a name, call it before the user is saved
+    public void add(String name) {
+        if (!enabled || name == null) {
+            return;
+        }
+        String key = normalize(name);
+        if (key == null) {
+            return;
+        }
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            // bits are only ever set, so retry only while another thread changed a different bit of the same word
+            long current;
+            while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private boolean contains(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* reads the users saved since the last scan when user_info's highest id is above the filter's, true when it did.
+       At most once per max-staleness, a caller in between gets false and trusts the filter as it is */
+    private synchronized boolean catchUp() {
+        long now = System.nanoTime();
+        if (now - nextCatchUp < 0) {
+            return false;
+        }
+        nextCatchUp = now + maxStaleness.toNanos();
+        // outside a read-only transaction, so this goes to the primary when there are read replicas
+        Long tableHighestId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM user_info", Long.class);
+        if (tableHighestId == null || tableHighestId <= highestId) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    // the first scan of user_info, after it the filter starts answering "no"
+    private void load() {
+        long started = System.nanoTime();
+        int users = refresh();
+        this.ready = true;
+        log.info("Username filter loaded {} users into {} KB in {} ms", users, bits.length() / 128,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        if (users > expectedUsers) {
+            log.warn("user_info holds {} users, more than security.username-filter.expected-users ({}), the filter "
+                    + "will let more unknown names through to the database", users, expectedUsers);
+        }
+    }
+
+    // adds every user with an id above the last scan's (minus the overlap), returns how many rows were read. The
+    // refresh thread and catchUp both scan, one at a time
+    private synchronized int refresh() {
+        long from = Math.max(0, highestId - REFRESH_OVERLAP);
+        int[] rows = {0};
+        jdbcTemplate.query("SELECT id, name FROM user_info WHERE id > ?", resultSet -> {
+            long id = resultSet.getLong(1);
+            add(resultSet.getString(2));
+            if (id > highestId) {
+                highestId = id;
+            }
+            rows[0]++;
+        }, from);
+        return rows[0];
+    }
+
+    private void refreshQuietly() {
+        try {
+            if (ready) {
+                refresh();
+            } else {
+                load();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh the username filter, will try again", e);
+        }
+    }
+
+    /* the key an ASCII login for this name looks up: lowercase and no trailing spaces. A name with other letters is
+       folded to the ASCII name the collation treats as equal, null when there is none */
+    static String normalize(String name) {
+        String key = name.stripTrailing().toLowerCase(Locale.ROOT);
+        if (isAscii(key)) {
+            return key;
+        }
+        key = COMBINING_MARKS.matcher(Normalizer.normalize(key, Normalizer.Form.NFKD)).replaceAll("");
+        StringBuilder folded = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char letter = key.charAt(i);
+            if (letter < 0x80) {
+                folded.append(letter);
+                continue;
+            }
+            String expansion = EXPANSIONS.get(letter);
+            if (expansion == null) {
+                return null;
+            }
+            folded.append(expansion);
+        }
+        return folded.toString();
+    }
+
+    private static boolean isAscii(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64-bit FNV-1a of the normalized name, mixed so both halves are usable as independent hashes
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static double fillRatio(AtomicLongArray bits) {
+        long set = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            set += Long.bitCount(bits.get(i));
+        }
+        return (double) set / (bits.length() * 64L);
+    }
+
+}
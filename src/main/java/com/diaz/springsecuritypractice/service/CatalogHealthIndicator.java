@@ -0,0 +1,35 @@
+package com.diaz.springsecuritypractice.service;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/*
+    The 'catalog' health check, part of the readiness group (/actuator/health/readiness, see application.properties).
+    OUT_OF_SERVICE until the first catalog snapshot is published and Inventory counts its stock, so a node that loads
+    its catalog in the background (products.catalog.load-in-background) only takes traffic once it can answer product
+    requests. Liveness doesn't include it, a node that is still loading must not be restarted for it.
+*/
+
+@Component
+public class CatalogHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private ProductCatalog catalog;
+
+    @Autowired
+    private Inventory inventory;
+
+    @Override
+    public Health health() {
+        CatalogSnapshot snapshot = catalog.snapshot();
+        if (snapshot == CatalogSnapshot.EMPTY || !inventory.tracks(snapshot)) {
+            return Health.outOfService().withDetail("state", "loading").build();
+        }
+        return Health.up()
+                .withDetail("products", snapshot.size())
+                .withDetail("version", snapshot.version())
+                .build();
+    }
+
+}
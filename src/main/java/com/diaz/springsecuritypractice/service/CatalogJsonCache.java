@@ -0,0 +1,148 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    The JSON of GET /products/all and GET /products/{id}, encoded once per catalog snapshot instead of once per request.
+    A snapshot never changes, so neither does its JSON: the bytes are built the first time they're asked for and kept
+    until a new snapshot is published, after which the next request encodes the new one.
+
+        /products/all  - the whole list as JSON bytes, plus a gzip compressed copy for clients that accept it
+        /products/{id} - each product's JSON bytes, encoded the first time that product is requested
+
+    ETag - an identifier of one version of a response. The client sends it back in If-None-Match and when it still
+    matches we answer 304 Not Modified with no body at all. Ours are built from the snapshot version, which the
+    controller can compare before anything is encoded. The gzip copy is a different sequence of bytes, so it gets an
+    ETag of its own. The catalog is generated anew on every start, so the ETags also carry a per-process 'epoch',
+    otherwise version 1 of yesterday's catalog would look like version 1 of today's.
+*/
+
+@Component
+public class CatalogJsonCache {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private volatile Encoded encoded = new Encoded(CatalogSnapshot.EMPTY);
+
+    // strong ETag of the snapshot's responses, the gzip variant when 'gzip' is true
+    public String etag(CatalogSnapshot snapshot, boolean gzip) {
+        return "\"" + epoch + "-" + snapshot.version() + (gzip ? "-gzip\"" : "\"");
+    }
+
+    // every product of the snapshot as a JSON array
+    public byte[] allProducts(CatalogSnapshot snapshot) {
+        Encoded current = encodedFor(snapshot);
+        byte[] json = current.allProducts;
+        if (json == null) {
+            synchronized (current) {
+                // one thread encodes a large catalog while the others wait for it, rather than all encoding it at once
+                if (current.allProducts == null) {
+                    current.allProducts = write(objectMapper.writerFor(new TypeReference<List<Product>>() { }),
+                            snapshot.products());
+                }
+                json = current.allProducts;
+            }
+        }
+        return json;
+    }
+
+    // the JSON array gzip compressed
+    public byte[] allProductsGzip(CatalogSnapshot snapshot) {
+        byte[] json = allProducts(snapshot);
+        Encoded current = encodedFor(snapshot);
+        byte[] gzip = current.allProductsGzip;
+        if (gzip == null) {
+            synchronized (current) {
+                if (current.allProductsGzip == null) {
+                    current.allProductsGzip = gzip(json);
+                }
+                gzip = current.allProductsGzip;
+            }
+        }
+        return gzip;
+    }
+
+    // one product as a JSON object, or null when the snapshot doesn't contain it
+    public byte[] product(CatalogSnapshot snapshot, int id) {
+        int position = snapshot.positionOf(id);
+        if (position < 0) {
+            return null;
+        }
+        Encoded current = encodedFor(snapshot);
+        byte[] json = current.products.get(position);
+        if (json == null) {
+            // two threads may both encode the same product, they produce the same bytes so either result can stay
+            json = write(objectMapper.writerFor(Product.class), snapshot.products().get(position));
+            current.products.set(position, json);
+        }
+        return json;
+    }
+
+    private Encoded encodedFor(CatalogSnapshot snapshot) {
+        Encoded current = encoded;
+        if (current.snapshot == snapshot) {
+            return current;
+        }
+        synchronized (this) {
+            current = encoded;
+            if (current.snapshot != snapshot) {
+                // a request still holding the previous snapshot must not throw away the cache of the newer one
+                boolean newer = snapshot.version() >= current.snapshot.version();
+                current = new Encoded(snapshot);
+                if (newer) {
+                    encoded = current;
+                }
+            }
+            return current;
+        }
+    }
+
+    private static byte[] write(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode products as JSON", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    // the encoded responses of one snapshot, filled in as they are requested
+    private static final class Encoded {
+
+        private final CatalogSnapshot snapshot;
+        private final AtomicReferenceArray<byte[]> products;
+        private volatile byte[] allProducts;
+        private volatile byte[] allProductsGzip;
+
+        private Encoded(CatalogSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.products = new AtomicReferenceArray<>(snapshot.size());
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.ProductSearch;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+    A CatalogSnapshot is an immutable, point-in-time copy of the product catalog. Once it is built nothing inside it
+    changes, so any number of request threads can read from it at the same time without locks. When the catalog is
+    reloaded we don't edit the old snapshot, we build a brand new one and swap the reference (see ProductCatalog).
+
+    Index - looking a product up by scanning a list is O(n), every request walks the catalog until it finds a match.
+    Instead, we index products by their int id so a lookup is O(1) no matter how big the catalog gets. We pick one of
+    two layouts when the snapshot is built:
+
+        Dense array - when ids are mostly consecutive (1, 2, 3 ... n) we store each product's position in an array
+        indexed by (id - minId). A lookup is a subtraction, a bounds check and two array reads.
+
+        Open addressing - when ids are sparse (1, 500, 90000 ...) a dense array would waste memory on empty slots, so
+        we use a hash table made of primitive int arrays. A collision simply moves on to the next slot (linear probing).
+
+    Both layouts use primitive ints as keys. A HashMap<Integer, Product> would box every id into an Integer object and
+    allocate on lookups outside the Integer cache, which adds garbage on our hottest read path.
+
+    Both layouts resolve an id to the product's position (0 .. size-1) in id order. Besides finding the product, the
+    position lets other structures keep per-product state in plain arrays, e.g. the stock counters in Inventory.
+
+    Search - alongside the id index every snapshot builds secondary indexes on price, quantity and name, which
+    /products/search queries instead of scanning every product (see ProductSearchIndex).
+
+    Version - every snapshot published by ProductCatalog gets the next number, so two snapshots with the same version
+    hold the same products. Responses built from a snapshot use it as their ETag (see CatalogJsonCache).
+*/
+
+public final class CatalogSnapshot {
+
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(Collections.emptyList());
+
+    // empty marker for the open addressing table, slots hold positions into the products array which are never negative
+    private static final int EMPTY_SLOT = -1;
+
+    // products and their ids, both sorted by ascending id so positions line up
+    private final Product[] products;
+    private final int[] ids;
+    private final List<Product> productView;
+    private final long version;
+
+    // dense layout, null when the catalog is sparse
+    private final int minId;
+    private final int[] densePositions;
+
+    // open addressing layout, null when the catalog is dense
+    private final int[] hashKeys;
+    private final int[] hashSlots;
+    private final int hashMask;
+
+    private final ProductSearchIndex searchIndex;
+
+    public CatalogSnapshot(Collection<Product> source) {
+        this(source, 0L);
+    }
+
+    public CatalogSnapshot(Collection<Product> source, long version) {
+        this.version = version;
+        this.products = source.toArray(new Product[0]);
+        Arrays.sort(this.products, Comparator.comparingInt(Product::getProductId));
+        this.productView = Collections.unmodifiableList(Arrays.asList(this.products));
+
+        this.ids = new int[products.length];
+        for (int i = 0; i < products.length; i++) {
+            ids[i] = products[i].getProductId();
+            if (i > 0 && ids[i] == ids[i - 1]) {
+                throw new IllegalArgumentException("Duplicate product id: " + ids[i]);
+            }
+        }
+
+        this.minId = ids.length == 0 ? 0 : ids[0];
+        long range = ids.length == 0 ? 0 : (long) ids[ids.length - 1] - minId + 1;
+
+        // at least half of the dense array must be filled, otherwise the hash table is the smaller structure
+        if (range <= Math.max(16L, 2L * ids.length)) {
+            this.densePositions = new int[(int) range];
+            Arrays.fill(densePositions, EMPTY_SLOT);
+            for (int position = 0; position < ids.length; position++) {
+                densePositions[ids[position] - minId] = position;
+            }
+            this.hashKeys = null;
+            this.hashSlots = null;
+            this.hashMask = 0;
+        } else {
+            // power of two capacity keeps the table at most half full and lets us use a bit mask instead of modulo
+            int capacity = Integer.highestOneBit(Math.max(2, ids.length) * 2 - 1) << 1;
+            this.densePositions = null;
+            this.hashKeys = new int[capacity];
+            this.hashSlots = new int[capacity];
+            this.hashMask = capacity - 1;
+            Arrays.fill(hashSlots, EMPTY_SLOT);
+            for (int position = 0; position < ids.length; position++) {
+                int slot = mix(ids[position]) & hashMask;
+                while (hashSlots[slot] != EMPTY_SLOT) {
+                    slot = (slot + 1) & hashMask;
+                }
+                hashKeys[slot] = ids[position];
+                hashSlots[slot] = position;
+            }
+        }
+
+        this.searchIndex = new ProductSearchIndex(products);
+    }
+
+    // returns the product with the given id, or null if the catalog doesn't contain it
+    public Product find(int id) {
+        int position = positionOf(id);
+        return position == EMPTY_SLOT ? null : products[position];
+    }
+
+    // returns the position of the product with the given id in id order, or -1 if the catalog doesn't contain it
+    public int positionOf(int id) {
+        if (densePositions != null) {
+            // subtraction in long so ids far below minId can't wrap around into a valid index
+            long offset = (long) id - minId;
+            return offset >= 0 && offset < densePositions.length ? densePositions[(int) offset] : EMPTY_SLOT;
+        }
+
+        int slot = mix(id) & hashMask;
+        int position;
+        while ((position = hashSlots[slot]) != EMPTY_SLOT) {
+            if (hashKeys[slot] == id) {
+                return position;
+            }
+            slot = (slot + 1) & hashMask;
+        }
+        return EMPTY_SLOT;
+    }
+
+    /* keyset pagination - returns up to 'limit' products whose id is greater than 'afterId'. Because ids are kept
+       sorted, finding where the page starts is a binary search, and the page is a view over the snapshot, not a copy.
+       Unlike offset paging (skip 5000, take 100) the cost doesn't grow the deeper a client pages into the catalog. */
+    public List<Product> page(int afterId, int limit) {
+        int start = Arrays.binarySearch(ids, afterId);
+        // binarySearch returns (-(insertion point) - 1) when the id itself isn't in the catalog
+        start = start >= 0 ? start + 1 : -start - 1;
+        int end = (int) Math.min((long) start + limit, products.length);
+        return productView.subList(start, Math.max(start, end));
+    }
+
+    // up to 'limit' products matching the search's filters, in the search's order
+    public List<Product> search(ProductSearch search, int limit) {
+        return searchIndex.search(search, limit);
+    }
+
+    // read-only view of every product ordered by id, no copy is made
+    public List<Product> products() {
+        return productView;
+    }
+
+    // number of the publish that created this snapshot, 0 for snapshots built outside ProductCatalog
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return products.length;
+    }
+
+    // id of the product with the highest id, or null for an empty catalog
+    public Integer lastId() {
+        return ids.length == 0 ? null : ids[ids.length - 1];
+    }
+
+    // spreads consecutive ids across the table so linear probing doesn't build long runs. package-private so
+    // CatalogSnapshotTest can pick ids that collide on purpose
+    static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.diaz.springsecuritypractice.service;
+
+/*
+    Thrown when a reservation asks for more units than the product has left, answered with 409 Conflict.
+*/
+
+public class InsufficientStockException extends RuntimeException {
+
+    private final int available;
+
+    public InsufficientStockException(int productId, int requested, int available) {
+        super("Product with id: " + productId + " has " + available + " left, " + requested + " requested");
+        this.available = available;
+    }
+
+    public int getAvailable() {
+        return available;
+    }
+
+}
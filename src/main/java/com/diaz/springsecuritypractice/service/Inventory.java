@@ -0,0 +1,187 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.Reservation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+    Stock levels and reservations for the products of the current catalog. Products in a CatalogSnapshot are
+    immutable, so their 'quantity' is only the starting stock. The live count of every product is kept here.
+
+    Per-product counters - stock lives in an AtomicIntegerArray, one counter per product at the product's position in
+    the snapshot (CatalogSnapshot.positionOf). Taking stock is a compare-and-set on that one counter: read the count,
+    give up if it's too low, otherwise swap in count - quantity, and retry if another thread changed it in between. The
+    count can never go below zero, so we never sell more than we have, and no lock is shared between products.
+
+    No padding - a CPU moves memory around in 64 byte cache lines, and 16 neighbouring counters share one. Threads
+    hammering a hot product also slow down writes to the products next to it (false sharing), but those are only
+    slowed while they are written at the same moment, which for a catalog of thousands of products is rare. Padding
+    every counter to a line of its own would cost 60 bytes per product (about 30 MB at 500k products) to avoid that,
+    so the counters stay dense, 4 bytes per product.
+
+    Reservations - each successful reserve creates a hold that expires after inventory.reservation.ttl. A sweeper
+    thread puts the units of expired holds back into stock. Releasing and expiring both remove the hold from a
+    ConcurrentHashMap first, only the thread whose remove succeeds returns the units, so they are never returned twice.
+
+    A reload of the catalog starts from fresh counters. Holds made before it keep pointing at the old counters, so
+    releasing them can't add stock to the new catalog.
+*/
+
+@Component
+public class Inventory {
+
+    private final ConcurrentHashMap<String, Hold> holds = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final Duration sweepInterval;
+
+    private final Counter reserved;
+    private final Counter soldOut;
+    private final Counter released;
+    private final Counter expired;
+
+    private volatile Stock stock = new Stock(CatalogSnapshot.EMPTY);
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public Inventory(@Value("${inventory.reservation.ttl:10m}") Duration ttl,
+                     @Value("${inventory.reservation.sweep-interval:1s}") Duration sweepInterval,
+                     MeterRegistry meterRegistry) {
+        this.ttlMillis = ttl.toMillis();
+        this.sweepInterval = sweepInterval;
+
+        this.reserved = Counter.builder("inventory.reservations").tag("result", "reserved").register(meterRegistry);
+        this.soldOut = Counter.builder("inventory.reservations").tag("result", "sold_out").register(meterRegistry);
+        this.released = Counter.builder("inventory.reservations").tag("result", "released").register(meterRegistry);
+        this.expired = Counter.builder("inventory.reservations").tag("result", "expired").register(meterRegistry);
+        Gauge.builder("inventory.reservations.active", holds, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-reservation-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = sweepInterval.toMillis();
+        sweeper.scheduleWithFixedDelay(this::expireReservations, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    // starts counting stock for the products of a newly published snapshot, from their quantity
+    public void reset(CatalogSnapshot snapshot) {
+        this.stock = new Stock(snapshot);
+    }
+
+    // true once the stock of the snapshot's products is counted here, reservations against it work from then on
+    public boolean tracks(CatalogSnapshot snapshot) {
+        return stock.snapshot == snapshot;
+    }
+
+    // units of the product left in stock
+    public int available(int productId) {
+        Stock current = stock;
+        return current.counters.get(current.slotOf(productId));
+    }
+
+    // takes 'quantity' units of the product out of stock and holds them for 'owner' until released or expired
+    public Reservation reserve(int productId, int quantity, String owner) {
+        if (quantity < 1) {
+            throw new IllegalArgumentException("quantity must be at least 1");
+        }
+        Stock current = stock;
+        int slot = current.slotOf(productId);
+
+        int available;
+        do {
+            available = current.counters.get(slot);
+            if (available < quantity) {
+                // sold out, no write at all so losing threads don't fight over the cache line
+                soldOut.increment();
+                throw new InsufficientStockException(productId, quantity, available);
+            }
+        } while (!current.counters.compareAndSet(slot, available, available - quantity));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = new UUID(random.nextLong(), random.nextLong()).toString();
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        holds.put(id, new Hold(owner, productId, quantity, expiresAt, current, slot));
+        reserved.increment();
+        return new Reservation(id, productId, quantity, Instant.ofEpochMilli(expiresAt), available - quantity);
+    }
+
+    // returns the units of the owner's reservation to stock, false if there is no such reservation (anymore)
+    public boolean release(String reservationId, String owner) {
+        Hold hold = holds.get(reservationId);
+        // someone else's reservation is reported the same as a missing one
+        if (hold == null || !hold.owner.equals(owner) || !holds.remove(reservationId, hold)) {
+            return false;
+        }
+        hold.stock.counters.addAndGet(hold.slot, hold.quantity);
+        released.increment();
+        return true;
+    }
+
+    // returns the units of every reservation past its expiry to stock, run by the sweeper thread
+    public void expireReservations() {
+        long now = System.currentTimeMillis();
+        holds.forEach((id, hold) -> {
+            if (hold.expiresAt <= now && holds.remove(id, hold)) {
+                hold.stock.counters.addAndGet(hold.slot, hold.quantity);
+                expired.increment();
+            }
+        });
+    }
+
+    // counters for one catalog snapshot
+    private static final class Stock {
+
+        private final CatalogSnapshot snapshot;
+        private final AtomicIntegerArray counters;
+
+        private Stock(CatalogSnapshot snapshot) {
+            this.snapshot = snapshot;
+            List<Product> products = snapshot.products();
+            this.counters = new AtomicIntegerArray(products.size());
+            for (int position = 0; position < products.size(); position++) {
+                counters.set(position, Math.max(0, products.get(position).getQuantity()));
+            }
+        }
+
+        private int slotOf(int productId) {
+            int position = snapshot.positionOf(productId);
+            if (position < 0) {
+                throw new RuntimeException("Product with id: " + productId + " not found");
+            }
+            return position;
+        }
+
+    }
+
+    private record Hold(String owner, int productId, int quantity, long expiresAt, Stock stock, int slot) {
+    }
+
+}
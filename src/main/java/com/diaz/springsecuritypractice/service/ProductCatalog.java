@@ -0,0 +1,37 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    ProductCatalog holds the current CatalogSnapshot. Readers grab whatever snapshot is current and work with it,
+    writers build a whole new snapshot off to the side and then publish it in a single reference swap.
+
+    volatile - guarantees that once a thread publishes a new snapshot every other thread sees the fully built object,
+    never a half constructed one. Because the snapshot itself is immutable, this single volatile read is all the
+    synchronization a reader needs. No locks, so a reload never blocks a request that is in the middle of a lookup.
+*/
+
+@Component
+public class ProductCatalog {
+
+    private volatile CatalogSnapshot current = CatalogSnapshot.EMPTY;
+
+    // version handed to the next snapshot, see CatalogSnapshot.version()
+    private final AtomicLong versions = new AtomicLong();
+
+    // current snapshot, callers should read it once per request and use that same instance throughout
+    public CatalogSnapshot snapshot() {
+        return current;
+    }
+
+    // builds a new snapshot from the given products and atomically replaces the current one
+    public CatalogSnapshot publish(Collection<Product> products) {
+        CatalogSnapshot snapshot = new CatalogSnapshot(products, versions.incrementAndGet());
+        this.current = snapshot;
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,273 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.ProductSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/*
+    Secondary indexes of a CatalogSnapshot, they answer GET /products/search without walking the whole catalog. Built
+    once together with the snapshot and, like the snapshot, never changed afterwards.
+
+    Each index is the snapshot's product positions sorted by one field, next to a primitive array of that field's
+    values in the same order:
+
+        price     - double[] of prices, ascending
+        quantity  - int[] of quantities, ascending
+        name      - String[] of lowercased names, ascending. Names starting with the same prefix sit next to each other,
+                    so the sorted array doubles as the prefix structure: two binary searches find the block of names
+                    that start with it, just like a trie would but without a node object per character
+
+    Because the values are sorted, every filter selects one contiguous block of its index, found with binary searches in
+    O(log n). We walk the smallest block and check the remaining filters on each product. When the results are sorted
+    by the field whose block we walk, we can stop as soon as 'limit' products matched, O(log n + k) for k products
+    looked at. Otherwise the matches are collected and put in order by their rank (their index in the sort field's
+    array), a plain int sort.
+
+    quantity is the stock listed in the snapshot, the same number /products/all returns. Units held by reservations
+    (see Inventory) are not subtracted.
+*/
+
+final class ProductSearchIndex {
+
+    private final Product[] products;
+
+    // product positions in id order are simply 0 .. n-1, so the id "index" needs no arrays
+    private final Order byId;
+    private final Order byPrice;
+    private final Order byQuantity;
+    private final Order byName;
+
+    // field values in the order of their index, prices[i] is the price of the product at byPrice.positions[i]
+    private final double[] prices;
+    private final int[] quantities;
+    private final String[] names;
+
+    // lowercased names by position, to check a name prefix without lowercasing on every search
+    private final String[] lowerCaseNames;
+
+    ProductSearchIndex(Product[] products) {
+        int n = products.length;
+        this.products = products;
+        this.lowerCaseNames = new String[n];
+        for (int position = 0; position < n; position++) {
+            lowerCaseNames[position] = lowerCase(products[position].getProductName());
+        }
+
+        // stable sorts of positions that start in id order, so products with equal values stay in id order
+        this.byId = new Order(null, n);
+        this.byPrice = new Order(sortedPositions(n, Comparator.comparingDouble(p -> products[p].getPrice())), n);
+        this.byQuantity = new Order(sortedPositions(n, Comparator.comparingInt(p -> products[p].getQuantity())), n);
+        this.byName = new Order(sortedPositions(n, Comparator.comparing(p -> lowerCaseNames[p])), n);
+
+        this.prices = new double[n];
+        this.quantities = new int[n];
+        this.names = new String[n];
+        for (int i = 0; i < n; i++) {
+            prices[i] = products[byPrice.positionAt(i)].getPrice();
+            quantities[i] = products[byQuantity.positionAt(i)].getQuantity();
+            names[i] = lowerCaseNames[byName.positionAt(i)];
+        }
+    }
+
+    // up to 'limit' products matching every filter of the search, in the search's order
+    List<Product> search(ProductSearch search, int limit) {
+        String prefix = search.getNamePrefix() == null ? null : lowerCase(search.getNamePrefix());
+
+        // the block each filter selects in its own index, the whole index for fields without a filter
+        Block price = priceBlock(search.getMinPrice(), search.getMaxPrice());
+        Block quantity = search.getMinQuantity() == null
+                ? new Block(byQuantity, 0, quantities.length)
+                : new Block(byQuantity, lowerBound(quantities, search.getMinQuantity()), quantities.length);
+        Block name = prefix == null ? new Block(byName, 0, names.length) : prefixBlock(prefix);
+
+        Block sorted = switch (search.getSort()) {
+            case ID -> new Block(byId, 0, products.length);
+            case PRICE -> price;
+            case QUANTITY -> quantity;
+            case NAME -> name;
+        };
+        Block smallest = sorted;
+        for (Block block : new Block[] {price, quantity, name}) {
+            if (block.size() < smallest.size()) {
+                smallest = block;
+            }
+        }
+        if (smallest.size() == 0) {
+            return Collections.emptyList();
+        }
+
+        /* walking the sort field's block in order stops after 'limit' matches. If the filters keep about
+           smallest.size() of its sorted.size() products, that's roughly limit * sorted / smallest products to look at,
+           worth it while it's no more than collecting all of the smallest block and sorting it */
+        if (smallest == sorted || (long) limit * sorted.size() <= (long) smallest.size() * smallest.size()) {
+            return walkInOrder(sorted, search, prefix, limit);
+        }
+        return collectAndSort(smallest, sorted.order, search, prefix, limit);
+    }
+
+    private List<Product> walkInOrder(Block block, ProductSearch search, String prefix, int limit) {
+        List<Product> found = new ArrayList<>(Math.min(limit, block.size()));
+        for (int i = 0; i < block.size() && found.size() < limit; i++) {
+            int position = block.order.positionAt(search.isDescending() ? block.to - 1 - i : block.from + i);
+            if (matches(position, search, prefix)) {
+                found.add(products[position]);
+            }
+        }
+        return found;
+    }
+
+    private List<Product> collectAndSort(Block block, Order sortOrder, ProductSearch search, String prefix, int limit) {
+        int[] ranks = new int[block.size()];
+        int matched = 0;
+        for (int i = block.from; i < block.to; i++) {
+            int position = block.order.positionAt(i);
+            if (matches(position, search, prefix)) {
+                ranks[matched++] = sortOrder.rankOf(position);
+            }
+        }
+        Arrays.sort(ranks, 0, matched);
+
+        int count = Math.min(limit, matched);
+        List<Product> found = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            found.add(products[sortOrder.positionAt(ranks[search.isDescending() ? matched - 1 - i : i])]);
+        }
+        return found;
+    }
+
+    private boolean matches(int position, ProductSearch search, String prefix) {
+        Product product = products[position];
+        return (search.getMinPrice() == null || product.getPrice() >= search.getMinPrice())
+                && (search.getMaxPrice() == null || product.getPrice() <= search.getMaxPrice())
+                && (search.getMinQuantity() == null || product.getQuantity() >= search.getMinQuantity())
+                && (prefix == null || lowerCaseNames[position].startsWith(prefix));
+    }
+
+    private Block priceBlock(Double min, Double max) {
+        int from = min == null ? 0 : lowerBound(prices, min);
+        int to = max == null ? prices.length : upperBound(prices, max);
+        return new Block(byPrice, from, Math.max(from, to));
+    }
+
+    // the names starting with the prefix follow the first name that isn't smaller than it
+    private Block prefixBlock(String prefix) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (names[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int from = low;
+        high = names.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (names[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return new Block(byName, from, low);
+    }
+
+    // index of the first value >= key
+    private static int lowerBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // index of the first value > key
+    private static int upperBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int lowerBound(int[] values, int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] sortedPositions(int n, Comparator<Integer> comparator) {
+        return IntStream.range(0, n).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String lowerCase(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    // product positions sorted by one field, and the other way around, each position's rank in that order
+    private static final class Order {
+
+        // null for id order, where the rank of a position is the position itself
+        private final int[] positions;
+        private final int[] ranks;
+
+        private Order(int[] positions, int n) {
+            this.positions = positions;
+            if (positions == null) {
+                this.ranks = null;
+            } else {
+                this.ranks = new int[n];
+                for (int rank = 0; rank < n; rank++) {
+                    ranks[positions[rank]] = rank;
+                }
+            }
+        }
+
+        private int positionAt(int rank) {
+            return positions == null ? rank : positions[rank];
+        }
+
+        private int rankOf(int position) {
+            return ranks == null ? position : ranks[position];
+        }
+
+    }
+
+    // the ranks from (inclusive) to 'to' (exclusive) of an order
+    private record Block(Order order, int from, int to) {
+
+        private int size() {
+            return to - from;
+        }
+
+    }
+
+}
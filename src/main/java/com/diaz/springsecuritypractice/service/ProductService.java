@@ -1,14 +1,25 @@
 package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.audit.AuditLog;
 import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.ProductPage;
+import com.diaz.springsecuritypractice.dto.ProductSearch;
+import com.diaz.springsecuritypractice.dto.Reservation;
+import com.diaz.springsecuritypractice.dto.StockLevel;
 import com.diaz.springsecuritypractice.entity.UserInfo;
 import com.diaz.springsecuritypractice.repository.UserInfoRepository;
+import com.diaz.springsecuritypractice.security.UsernameBloomFilter;
+import io.micrometer.core.annotation.Timed;
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -23,12 +34,47 @@ import java.util.stream.IntStream;
     With a refreshed brain @PostConstruct ensures that the spring application is completely built and running
     before it executes the orders in the function it's annotated with. We want all features of the application
     ready for use before doing the action.
+
+    Background loading - with products.catalog.load-in-background the catalog is generated on a thread of its own and
+    startup doesn't wait for it. Until it is published the catalog is empty, so CatalogHealthIndicator keeps
+    /actuator/health/readiness at OUT_OF_SERVICE and the load balancer sends no requests to this node yet.
+
+    Products are served from a ProductCatalog rather than a plain list. The catalog keeps an immutable snapshot indexed
+    by product id, so finding a product is a single array/hash lookup instead of streaming through every product,
+    and many request threads can read it at once without any locking. Live stock and reservations are kept next to it
+    in Inventory, the snapshot's quantity is where each product's stock starts.
+
+    @Timed - every public method call is recorded in the 'product.service' timer, tagged with the method name and the
+    exception it threw (if any). The timing is done by a proxy around this bean, so calls from one of these methods to
+    another aren't counted twice.
 */
 
 @Service
+@Timed("product.service")
 public class ProductService {
 
-    List<Product> product_list = null;
+    private static final Logger log = LoggerFactory.getLogger(ProductService.class);
+
+    @Autowired
+    private ProductCatalog catalog;
+
+    @Autowired
+    private Inventory inventory;
+
+    @Autowired
+    private CatalogJsonCache jsonCache;
+
+    // number of products generated at startup, see products.catalog.size in application.properties
+    @Value("${products.catalog.size:99}")
+    private int catalogSize;
+
+    // generate the catalog after startup instead of during it, see products.catalog.load-in-background
+    @Value("${products.catalog.load-in-background:false}")
+    private boolean loadInBackground;
+
+    // upper bound on page size so a single paginated request can't ask for the whole catalog
+    @Value("${products.page.max-limit:1000}")
+    private int maxPageLimit;
 
     //injected dependencies to persist data and hash passwords
     @Autowired
@@ -37,37 +83,145 @@ public class ProductService {
     @Autowired
     private PasswordEncoder encoder;
 
-    //Create 99 instances of product object with ordered numbering and random qty and prices
+    // cached login details of users, stale once a user is saved with a new password or roles
+    @Autowired
+    private UserCache userCache;
+
+    // names that can log in, a new user has to be added before its row is visible to logins
+    @Autowired
+    private UsernameBloomFilter usernameFilter;
+
+    // every sign-up is recorded, the write to disk happens later on the audit log's own thread
+    @Autowired
+    private AuditLog auditLog;
+
+    //Create catalogSize (99 by default) instances of product object with ordered numbering and random qty and prices
     //We used Java streaming to do this however it can be done with a traditional for loop as well.
-    @PostConstruct
+    //The list is handed to the catalog which builds the indexed snapshot and swaps it in for readers.
+    //One Random for the whole catalog, seeding a new one for every field cost more than generating the numbers.
     public void loadProductsFromDb() {
-        product_list = IntStream.range(1, 100)
+        Random random = new Random();
+        List<Product> products = IntStream.rangeClosed(1, catalogSize)
                 .mapToObj( i -> Product.builder()
                         .productId(i)
                         .productName("product " + i)
-                        .quantity(new Random().nextInt(10))
-                        .price(new Random().nextInt(5000))
+                        .quantity(random.nextInt(10))
+                        .price(random.nextInt(5000))
                         .build()
                 ).collect(Collectors.toList());
+        inventory.reset(catalog.publish(products));
     }
 
-    // returns list of products
+    @PostConstruct
+    public void loadCatalogAtStartup() {
+        if (!loadInBackground) {
+            loadProductsFromDb();
+            return;
+        }
+        Thread.ofPlatform().name("catalog-loader").daemon().start(() -> {
+            long started = System.nanoTime();
+            try {
+                loadProductsFromDb();
+                log.info("Loaded {} products in the background in {} ms", catalogSize,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            } catch (RuntimeException | Error e) {
+                // the catalog stays empty and readiness stays OUT_OF_SERVICE, so this node never takes traffic
+                log.error("Could not load the product catalog", e);
+            }
+        });
+    }
+
+    // returns read-only list of products from the current snapshot
     public List<Product> getAllProducts() {
-        return product_list;
+        return catalog.snapshot().products();
     }
 
-    // returns specific product given id
+    // the current catalog snapshot, a request reads it once so its ETag and its body describe the same products
+    public CatalogSnapshot getCatalogSnapshot() {
+        return catalog.snapshot();
+    }
+
+    // every product of the snapshot as JSON bytes (gzip compressed when 'gzip' is true), encoded once per snapshot
+    public byte[] getAllProductsJson(CatalogSnapshot snapshot, boolean gzip) {
+        return gzip ? jsonCache.allProductsGzip(snapshot) : jsonCache.allProducts(snapshot);
+    }
+
+    // the product's JSON bytes, encoded once per snapshot
+    public byte[] getProductJson(CatalogSnapshot snapshot, int id) {
+        byte[] json = jsonCache.product(snapshot, id);
+        if (json == null) {
+            throw productNotFound(id);
+        }
+        return json;
+    }
+
+    // strong ETag of the snapshot's product responses, see CatalogJsonCache
+    public String getCatalogEtag(CatalogSnapshot snapshot, boolean gzip) {
+        return jsonCache.etag(snapshot, gzip);
+    }
+
+    // returns the products after the given id cursor, limit is clamped between 1 and products.page.max-limit
+    public ProductPage getProductPage(int after, int limit) {
+        CatalogSnapshot snapshot = catalog.snapshot();
+        List<Product> products = snapshot.page(after, Math.max(1, Math.min(limit, maxPageLimit)));
+
+        // only hand out a cursor when there is something left to read past the last product of this page
+        Integer nextCursor = null;
+        if (!products.isEmpty()) {
+            int lastId = products.get(products.size() - 1).getProductId();
+            if (lastId != snapshot.lastId()) {
+                nextCursor = lastId;
+            }
+        }
+        return new ProductPage(products, nextCursor);
+    }
+
+    // products matching the search, answered from the snapshot's price, quantity and name indexes. the limit is
+    // clamped between 1 and products.page.max-limit like a page of /products/all
+    public List<Product> searchProducts(ProductSearch search) {
+        return catalog.snapshot().search(search, Math.max(1, Math.min(search.getLimit(), maxPageLimit)));
+    }
+
+    // returns specific product given id, O(1) lookup against the snapshot's id index
     public Product getProduct(int id) {
-        return product_list.stream()
-                .filter(product -> product.getProductId() == id)
-                .findAny()
-                .orElseThrow(() -> new RuntimeException("Product with id: " + id + " not found"));
+        Product product = catalog.snapshot().find(id);
+        if (product == null) {
+            throw productNotFound(id);
+        }
+        return product;
+    }
+
+    private RuntimeException productNotFound(int id) {
+        return new RuntimeException("Product with id: " + id + " not found");
+    }
+
+    // units of the product left right now, the snapshot's quantity minus what is reserved
+    public StockLevel getProductStock(int id) {
+        return new StockLevel(id, inventory.available(id));
+    }
+
+    // holds 'quantity' units of the product for the user, InsufficientStockException when not enough are left
+    public Reservation reserveProduct(int id, int quantity, String username) {
+        return inventory.reserve(id, quantity, username);
+    }
+
+    // gives the units of the user's reservation back, false when it doesn't exist, expired or belongs to someone else
+    public boolean releaseReservation(String reservationId, String username) {
+        return inventory.release(reservationId, username);
     }
 
     // method that hashes and persists data to our DB
     public String addUserInfo(UserInfo userInfo) {
         userInfo.setPassword(encoder.encode(userInfo.getPassword()));
+        return addHashedUserInfo(userInfo);
+    }
+
+    // the rest of a sign-up, for callers that hashed the password already (the reactive build hashes without blocking)
+    public String addHashedUserInfo(UserInfo userInfo) {
+        usernameFilter.add(userInfo.getName());
         userInfoRepository.save(userInfo);
+        userCache.removeUserFromCache(userInfo.getName());
+        auditLog.registered(userInfo.getName());
         return "user added to the system";
     }
 
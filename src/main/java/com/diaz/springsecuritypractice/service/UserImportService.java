@@ -0,0 +1,283 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.audit.AuditLog;
+import com.diaz.springsecuritypractice.dto.BulkImportResult;
+import com.diaz.springsecuritypractice.entity.UserInfo;
+import com.diaz.springsecuritypractice.security.BoundedPasswordEncoder;
+import com.diaz.springsecuritypractice.security.HashingCapacityExceededException;
+import com.diaz.springsecuritypractice.security.HashingExecutor;
+import com.diaz.springsecuritypractice.security.UsernameBloomFilter;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/*
+    Bulk user import. Saving users one request at a time means one BCrypt hash and one INSERT round trip per user, for
+    50k users that's hours. This service streams the users out of the request body and works through them in batches:
+
+        1. Parse - users are read one at a time from the request stream (a JSON array or NDJSON, one user per line),
+           the whole file is never held in memory.
+
+        2. Hash - the passwords of a batch are hashed in parallel on the HashingExecutor pool. We keep at most as many
+           hashes in flight as the pool has threads, so an import never fills the queue that logins depend on.
+
+        3. Insert - each batch is written with JDBC batching, many INSERTs sent to the database in one round trip
+           (MySQL folds them into a single multi-row INSERT with rewriteBatchedStatements=true).
+
+    Why JDBC instead of userInfoRepository.saveAll? With @GeneratedValue(strategy = GenerationType.IDENTITY) Hibernate
+    has to run every INSERT on its own to read back the generated id, so it can't batch them. We don't need the ids
+    back here, so a plain JDBC batch lets the database's AUTO_INCREMENT column assign them and keeps the existing
+    key sequence intact (switching UserInfo to a sequence/table generator would hand out ids that collide with rows
+    already created through AUTO_INCREMENT).
+
+    A row that can't be imported (missing fields, wrong types, failed hash, rejected INSERT) is reported in the result
+    and the import carries on with the next row. If a batch INSERT fails, that batch is retried row by row to find which
+    rows the database rejected. Only broken JSON syntax ends an import early, the rows before it are still imported.
+    Every imported user is recorded in the audit log as a REGISTRATION, the same as a sign-up through /products/new.
+*/
+
+@Service
+public class UserImportService {
+
+    private static final String INSERT_SQL = "INSERT INTO user_info (name, email, password, roles) VALUES (?, ?, ?, ?)";
+
+    // how many failed rows are described in the result, the rest are only counted
+    private static final int MAX_REPORTED_FAILURES = 1000;
+
+    // how often a row is re-queued when the hashing pool turns it away because logins are keeping it busy
+    private static final int MAX_HASH_ATTEMPTS = 5;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PasswordEncoder encoder;
+
+    @Autowired
+    private HashingExecutor hashingExecutor;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UsernameBloomFilter usernameFilter;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @Value("${users.import.batch-size:500}")
+    private int batchSize;
+
+    private TransactionTemplate transactionTemplate;
+    private PasswordEncoder hashingEncoder;
+
+    @PostConstruct
+    public void init() {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // we already run the hashes on the hashing pool, calling the bounded encoder from there would queue them twice
+        this.hashingEncoder = encoder instanceof BoundedPasswordEncoder bounded ? bounded.getDelegate() : encoder;
+    }
+
+    // imports every user in the stream, a JSON array of users or NDJSON with one user per line
+    public BulkImportResult importUsers(InputStream input) throws IOException {
+        BulkImportResult result = new BulkImportResult();
+        List<Row> batch = new ArrayList<>(batchSize);
+
+        try (MappingIterator<UserInfo> users = objectMapper.readerFor(UserInfo.class).readValues(input)) {
+            int rowNumber = 0;
+            while (true) {
+                UserInfo user;
+                try {
+                    if (!users.hasNextValue()) {
+                        break;
+                    }
+                    rowNumber++;
+                    user = users.nextValue();
+                } catch (JsonParseException e) {
+                    // broken JSON syntax, no reliable way to tell where the next user starts, keep what we have
+                    result.setReceived(rowNumber);
+                    fail(result, rowNumber, null, "Malformed JSON, import stopped here: " + e.getOriginalMessage());
+                    break;
+                } catch (JsonProcessingException e) {
+                    // valid JSON that doesn't fit a UserInfo (e.g. an object for the name), skip just this user
+                    result.setReceived(rowNumber);
+                    fail(result, rowNumber, null, "Invalid user: " + e.getOriginalMessage());
+                    continue;
+                }
+
+                result.setReceived(rowNumber);
+                String invalid = validate(user);
+                if (invalid != null) {
+                    fail(result, rowNumber, user.getName(), invalid);
+                    continue;
+                }
+                batch.add(new Row(rowNumber, user));
+                if (batch.size() == batchSize) {
+                    importBatch(batch, result);
+                    batch.clear();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            importBatch(batch, result);
+        }
+        return result;
+    }
+
+    private void importBatch(List<Row> batch, BulkImportResult result) {
+        List<Row> hashed = hashPasswords(batch, result);
+        if (hashed.isEmpty()) {
+            return;
+        }
+
+        // before the INSERT, a user must never be able to log in while the filter still says the name doesn't exist
+        for (Row row : hashed) {
+            usernameFilter.add(row.user.getName());
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, hashed, hashed.size(), (statement, row) -> {
+                        statement.setString(1, row.user.getName());
+                        statement.setString(2, row.user.getEmail());
+                        statement.setString(3, row.user.getPassword());
+                        statement.setString(4, row.user.getRoles());
+                    }));
+            for (Row row : hashed) {
+                imported(result, row);
+            }
+        } catch (DataAccessException batchFailure) {
+            // the whole batch was rolled back, insert the rows one at a time to find the ones the database rejects
+            for (Row row : hashed) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, row.user.getName(), row.user.getEmail(), row.user.getPassword(),
+                            row.user.getRoles());
+                    imported(result, row);
+                } catch (DataAccessException e) {
+                    fail(result, row.number, row.user.getName(),
+                            "Rejected by database: " + e.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    // replaces every raw password in the batch with its hash, rows that couldn't be hashed are reported and dropped
+    private List<Row> hashPasswords(List<Row> batch, BulkImportResult result) {
+        List<Row> hashed = new ArrayList<>(batch.size());
+        ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+        ArrayDeque<Pending> waiting = new ArrayDeque<>();
+        for (Row row : batch) {
+            waiting.add(new Pending(row, 1, null));
+        }
+
+        int window = hashingExecutor.getConcurrency();
+        while (!waiting.isEmpty() || !inFlight.isEmpty()) {
+            // keep at most 'window' hashes on the pool, leaving its queue free for logins
+            while (!waiting.isEmpty() && inFlight.size() < window) {
+                Pending pending = waiting.poll();
+                String rawPassword = pending.row.user.getPassword();
+                try {
+                    inFlight.add(new Pending(pending.row, pending.attempt,
+                            hashingExecutor.submit(() -> hashingEncoder.encode(rawPassword))));
+                } catch (HashingCapacityExceededException e) {
+                    // the pool is full of login work, try again once some of our own hashes have finished
+                    waiting.addFirst(pending);
+                    if (inFlight.isEmpty()) {
+                        backOff();
+                    }
+                    break;
+                }
+            }
+
+            Pending done = inFlight.poll();
+            if (done == null) {
+                continue;
+            }
+            try {
+                done.row.user.setPassword(done.hash.get());
+                hashed.add(done.row);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof HashingCapacityExceededException && done.attempt < MAX_HASH_ATTEMPTS) {
+                    waiting.add(new Pending(done.row, done.attempt + 1, null));
+                } else {
+                    fail(result, done.row.number, done.row.user.getName(),
+                            "Password hashing failed: " + e.getCause().getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while hashing imported passwords", e);
+            }
+        }
+        return hashed;
+    }
+
+    private String validate(UserInfo user) {
+        if (user == null) {
+            return "Empty user";
+        }
+        if (user.getName() == null || user.getName().isBlank()) {
+            return "name is required";
+        }
+        if (user.getPassword() == null || user.getPassword().isEmpty()) {
+            return "password is required";
+        }
+        if (user.getRoles() == null || user.getRoles().isBlank()) {
+            return "roles is required";
+        }
+        return null;
+    }
+
+    private void imported(BulkImportResult result, Row row) {
+        result.setImported(result.getImported() + 1);
+        userCache.removeUserFromCache(row.user.getName());
+        auditLog.registered(row.user.getName());
+    }
+
+    private void fail(BulkImportResult result, int rowNumber, String name, String reason) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getFailures().size() < MAX_REPORTED_FAILURES) {
+            result.getFailures().add(new BulkImportResult.RowFailure(rowNumber, name, reason));
+        }
+    }
+
+    private void backOff() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the hashing pool", e);
+        }
+    }
+
+    private record Row(int number, UserInfo user) {
+    }
+
+    private record Pending(Row row, int attempt, Future<String> hash) {
+    }
+
+}
@@ -1,8 +1,11 @@
 package com.diaz.springsecuritypractice.service;
 
-import com.diaz.springsecuritypractice.entity.UserInfo;
+import com.diaz.springsecuritypractice.config.ReadWriteRoutingDataSource;
+import com.diaz.springsecuritypractice.dto.UserCredentials;
 import com.diaz.springsecuritypractice.repository.UserInfoRepository;
+import com.diaz.springsecuritypractice.security.AuthenticationMetrics;
 import com.diaz.springsecuritypractice.security.UserInfoUserDetails;
+import com.diaz.springsecuritypractice.security.UsernameBloomFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -21,7 +24,11 @@ import java.util.Optional;
     "username" and load that user from the database. In our case we will retrieve the user from our database via
     JPA. However, for our model, we don't have a username field, so we can customize this. We will load the user by
     first name, we can do this be defining a custom method in our JPA Repository class for UserInfo that allows us
-    to find the user by first name since it's an existing field in our UserInfo entity.
+    to find the user by first name since it's an existing field in our UserInfo entity. The login only reads the
+    name, password hash and roles, so we fetch just those (findCredentialsByName) rather than the whole entity.
+    Names that UsernameBloomFilter knows were never saved are rejected without a query at all. With read replicas the
+    lookup runs on a replica, a name it doesn't know is looked up once more on the primary, since a user who signed up
+    a moment ago may not have been replicated yet.
 
     UserDetails Interface - an interface containing the fields, getPassword(), getUserName(), isAccountNonExpired(),
     isAccountNonLocked(), isCredentialNonExpired(), and isEnabled(). It also contains the roles/authorities upon
@@ -35,6 +42,17 @@ public class UserInfoUserDetailsService implements UserDetailsService {
     @Autowired
     private UserInfoRepository userInfoRepository;
 
+    // times the query and the UserDetails construction separately, see AuthenticationMetrics
+    @Autowired
+    private AuthenticationMetrics metrics;
+
+    @Autowired
+    private UsernameBloomFilter usernameFilter;
+
+    // only there when datasource.replicas.urls is set, see DataSourceConfig
+    @Autowired(required = false)
+    private ReadWriteRoutingDataSource routingDataSource;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
 
@@ -54,10 +72,31 @@ public class UserInfoUserDetailsService implements UserDetailsService {
         done with persisted data from our DB essentially automating the process and all the boilerplate code from above
         */
 
-        Optional<UserInfo> userInfo = userInfoRepository.findByName(username);
+        long start = System.nanoTime();
+        if (!usernameFilter.mightContain(username)) {
+            // DaoAuthenticationProvider still compares the password against a dummy hash, so this isn't any faster
+            metrics.record(AuthenticationMetrics.USER_QUERY, AuthenticationMetrics.FILTERED, start);
+            throw new UsernameNotFoundException("USER NOT FOUND!");
+        }
+
+        Optional<UserCredentials> credentials;
+        try {
+            credentials = userInfoRepository.findCredentialsByName(username);
+            if (credentials.isEmpty() && routingDataSource != null) {
+                credentials = userInfoRepository.findCredentialsByNameOnPrimary(username);
+            }
+        } catch (RuntimeException e) {
+            metrics.record(AuthenticationMetrics.USER_QUERY, AuthenticationMetrics.ERROR, start);
+            throw e;
+        }
+        metrics.record(AuthenticationMetrics.USER_QUERY,
+                credentials.isPresent() ? AuthenticationMetrics.SUCCESS : AuthenticationMetrics.UNKNOWN_USER, start);
 
-        return userInfo.map(UserInfoUserDetails::new)
+        start = System.nanoTime();
+        UserDetails userDetails = credentials.map(UserInfoUserDetails::new)
                 .orElseThrow(() ->  new UsernameNotFoundException("USER NOT FOUND!"));
+        metrics.record(AuthenticationMetrics.USER_DETAILS, AuthenticationMetrics.SUCCESS, start);
+        return userDetails;
 
     }
 }
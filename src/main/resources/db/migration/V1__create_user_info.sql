@@ -0,0 +1,10 @@
+-- user_info as Hibernate created it while spring.jpa.hibernate.ddl-auto=update managed the schema.
+-- IF NOT EXISTS lets databases created that way adopt Flyway (spring.flyway.baseline-on-migrate).
+CREATE TABLE IF NOT EXISTS user_info (
+    id       INT          NOT NULL AUTO_INCREMENT,
+    name     VARCHAR(255),
+    email    VARCHAR(255),
+    password VARCHAR(255),
+    roles    VARCHAR(255),
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,4 @@
+-- Logins look users up by name. Without an index every lookup scans the whole table.
+-- Fails if the table already holds two users with the same name, remove the duplicates first:
+--   SELECT name, COUNT(*) FROM user_info GROUP BY name HAVING COUNT(*) > 1;
+CREATE UNIQUE INDEX ux_user_info_name ON user_info (name);
@@ -0,0 +1,59 @@
+package com.diaz.springsecuritypractice.config;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/*
+    Threads of the reactive build. Netty serves every connection from a few event loop threads (one per CPU core), a
+    request only holds one of them while it is actually running code. An open connection that is waiting, e.g. a slow
+    client reading the /products/all NDJSON stream, costs its buffers but no thread. The flip side is that nothing may
+    block an event loop thread, every request behind it on that loop would wait as well.
+
+    Two kinds of work block, and each has a bounded pool of its own:
+
+        BCrypt - runs on the HashingExecutor like in the servlet build (BoundedPasswordEncoder.encodeAsync and
+        matchesAsync), the event loop is called back when the hash is done. Same concurrency limit, queue and deadline.
+
+        JPA - Hibernate and JDBC block on the database. Repository calls (the login lookup, saving a sign-up) run on
+        the jdbcScheduler. It has as many threads as the connection pool has connections (reactive.jdbc.threads), more
+        would only wait for a connection, and at most reactive.jdbc.queue-capacity calls wait for a thread.
+
+    Everything else the endpoints do (the catalog, its JSON cache, the inventory) is in memory and runs on the event
+    loop.
+
+    Netty - the build still contains Tomcat for the servlet stack, and Spring Boot would run a reactive application on
+    Tomcat too when both are there. The server factory below makes it Netty, server.* properties apply to it as usual.
+*/
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveThreadingConfig {
+
+    @Value("${reactive.jdbc.threads:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int jdbcThreads;
+
+    @Value("${reactive.jdbc.queue-capacity:1000}")
+    private int jdbcQueueCapacity;
+
+    @Bean
+    //Serves the reactive build from Netty's event loops instead of Tomcat
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(
+            ObjectProvider<NettyServerCustomizer> serverCustomizers) {
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+        factory.getServerCustomizers().addAll(serverCustomizers.orderedStream().toList());
+        return factory;
+    }
+
+    @Bean(destroyMethod = "dispose")
+    //Runs blocking repository calls off the event loop
+    public Scheduler jdbcScheduler() {
+        return Schedulers.newBoundedElastic(jdbcThreads, jdbcQueueCapacity, "jdbc");
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.dto.AuthRequest;
+import com.diaz.springsecuritypractice.dto.TokenResponse;
+import com.diaz.springsecuritypractice.security.HashingCapacityExceededException;
+import com.diaz.springsecuritypractice.security.LoginRateLimiter;
+import com.diaz.springsecuritypractice.security.TimedReactiveAuthenticationManager;
+import com.diaz.springsecuritypractice.security.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/*
+    AuthController for the reactive build, POST /auth/token exchanges a username and password for a signed bearer
+    token. The credentials are checked by TimedReactiveAuthenticationManager, the same check the reactive form login
+    uses, and the thread that received the request is free while the password is hashed.
+*/
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/auth")
+public class ReactiveAuthController {
+
+    @Autowired
+    private TimedReactiveAuthenticationManager authenticationManager;
+
+    @Autowired
+    private TokenService tokenService;
+
+    // LoginRateLimitWebFilter already limited this request per IP, the username is only known once the body is read
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    // exchanges valid credentials for a bearer token, this endpoint is public in the security filter chain
+    @PostMapping("/token")
+    public Mono<ResponseEntity<TokenResponse>> token(@RequestBody Mono<AuthRequest> body) {
+        return body.flatMap(request -> {
+            long retryAfter = loginRateLimiter.acquireForUsername(request.getUsername());
+            if (retryAfter > 0) {
+                return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                        .<TokenResponse>build());
+            }
+            return authenticationManager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(
+                            request.getUsername(), request.getPassword()))
+                    .map(authentication -> ResponseEntity.ok(new TokenResponse(tokenService.issue(authentication),
+                            "Bearer", tokenService.getTtl().toSeconds())))
+                    // same answer for unknown users and wrong passwords, a saturated hashing pool is left to
+                    // ApiExceptionHandler (503 + Retry-After)
+                    .onErrorResume(e -> e instanceof AuthenticationException
+                                    && !(e instanceof HashingCapacityExceededException),
+                            e -> Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).<TokenResponse>build()));
+        });
+    }
+
+}
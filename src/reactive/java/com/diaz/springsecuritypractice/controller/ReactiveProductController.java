@@ -0,0 +1,176 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.ProductPage;
+import com.diaz.springsecuritypractice.dto.ProductSearch;
+import com.diaz.springsecuritypractice.dto.Reservation;
+import com.diaz.springsecuritypractice.dto.ReservationRequest;
+import com.diaz.springsecuritypractice.dto.StockLevel;
+import com.diaz.springsecuritypractice.entity.UserInfo;
+import com.diaz.springsecuritypractice.security.BoundedPasswordEncoder;
+import com.diaz.springsecuritypractice.service.CatalogSnapshot;
+import com.diaz.springsecuritypractice.service.ProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.List;
+
+/*
+    ProductController for the reactive build, the same endpoints and responses (see ProductController for what each
+    one does) on WebFlux. The mapping annotations are the same, what changes is that a method returns a Mono (one
+    value) or a Flux (a stream of values) that WebFlux subscribes to, and the event loop thread moves on to other
+    connections while the value isn't there yet.
+
+    Most endpoints answer from the in-memory catalog and complete right away. A sign-up hashes its password on the
+    HashingExecutor and saves the user on the jdbcScheduler (see ReactiveThreadingConfig), without blocking the event
+    loop in between.
+
+    Flux + NDJSON - /products/all with 'Accept: application/x-ndjson' returns a Flux of products, WebFlux writes each
+    one as a line of JSON as soon as the client can take it. A slow client applies backpressure: the Flux is only
+    asked for more products once Netty has written the previous ones. A stalled stream holds no thread, only the few
+    hundred products Netty has encoded ahead (about 140 KB of heap, see README).
+
+    Authorization is checked in ReactiveSecurityConfig's filter chain, so there are no @PreAuthorize annotations here.
+    Bulk sign-up (/products/bulk) is only served by the servlet build.
+*/
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/products")
+public class ReactiveProductController {
+
+    @Autowired
+    private ProductService service;
+
+    // hashes sign-up passwords on the HashingExecutor without waiting for them
+    @Autowired
+    private BoundedPasswordEncoder encoder;
+
+    // runs the blocking save of a sign-up
+    @Autowired
+    private Scheduler jdbcScheduler;
+
+    @GetMapping("/welcome")
+    public Mono<String> welcome() {
+        return Mono.just("Welcome, this endpoint isn't secure");
+    }
+
+    // the password is hashed first, then the user is saved with the hash
+    @PostMapping("/new")
+    public Mono<String> addNewUser(@RequestBody Mono<UserInfo> body) {
+        return body
+                .flatMap(userInfo -> Mono.fromFuture(() -> encoder.encodeAsync(userInfo.getPassword()))
+                        .map(hash -> {
+                            userInfo.setPassword(hash);
+                            return userInfo;
+                        }))
+                .publishOn(jdbcScheduler)
+                .map(service::addHashedUserInfo);
+    }
+
+    // the whole catalog as one JSON array, 304 when the client's copy is still current
+    @GetMapping("/all")
+    public Mono<ResponseEntity<byte[]>> getAllTheProducts(ServerWebExchange exchange) {
+        return Mono.fromSupplier(() -> {
+            CatalogSnapshot snapshot = service.getCatalogSnapshot();
+            boolean gzip = ProductController.acceptsGzip(
+                    exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+            if (exchange.checkNotModified(service.getCatalogEtag(snapshot, gzip))) {
+                return ProductController.notModified();
+            }
+            ResponseEntity.BodyBuilder response = ProductController.cachedJson();
+            if (gzip) {
+                response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return response.body(service.getAllProductsJson(snapshot, gzip));
+        });
+    }
+
+    // one page of products, e.g. localhost:8080/products/all?after=100&limit=50
+    @GetMapping(value = "/all", params = "limit")
+    public Mono<ProductPage> getProductPage(@RequestParam(defaultValue = "0") int after, @RequestParam int limit) {
+        return Mono.fromSupplier(() -> service.getProductPage(after, limit));
+    }
+
+    // streams every product as NDJSON, as fast as the client reads them
+    @GetMapping(value = "/all", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Product> streamAllTheProducts() {
+        return Flux.defer(() -> Flux.fromIterable(service.getAllProducts()));
+    }
+
+    // products filtered by price range, minimum quantity and name prefix, 400 for an unknown sort or direction
+    @GetMapping("/search")
+    public Mono<ResponseEntity<List<Product>>> searchProducts(@RequestParam(required = false) Double minPrice,
+                                                              @RequestParam(required = false) Double maxPrice,
+                                                              @RequestParam(required = false) Integer minQuantity,
+                                                              @RequestParam(required = false) String name,
+                                                              @RequestParam(defaultValue = "id") String sort,
+                                                              @RequestParam(defaultValue = "asc") String direction,
+                                                              @RequestParam(defaultValue = "100") int limit) {
+        ProductSearch.Sort order = ProductSearch.Sort.fromParameter(sort);
+        boolean descending = direction.equalsIgnoreCase("desc");
+        if (order == null || (!descending && !direction.equalsIgnoreCase("asc"))) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return Mono.fromSupplier(() -> ResponseEntity.ok(service.searchProducts(ProductSearch.builder()
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .minQuantity(minQuantity)
+                .namePrefix(name)
+                .sort(order)
+                .descending(descending)
+                .limit(limit)
+                .build())));
+    }
+
+    // a single product's JSON, 304 when the client's copy is still current, 404 first for an id that isn't in it
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<byte[]>> getProductById(@PathVariable int id, ServerWebExchange exchange) {
+        return Mono.fromSupplier(() -> {
+            CatalogSnapshot snapshot = service.getCatalogSnapshot();
+            if (snapshot.find(id) == null) {
+                return ResponseEntity.notFound().<byte[]>build();
+            }
+            if (exchange.checkNotModified(service.getCatalogEtag(snapshot, false))) {
+                return ProductController.notModified();
+            }
+            return ProductController.cachedJson().body(service.getProductJson(snapshot, id));
+        });
+    }
+
+    // units of the product left right now, never cached unlike the product's own JSON
+    @GetMapping("/{id}/stock")
+    public Mono<StockLevel> getProductStock(@PathVariable int id) {
+        return Mono.fromSupplier(() -> service.getProductStock(id));
+    }
+
+    // 201 with the reservation, or 409 when not enough units are left
+    @PostMapping("/{id}/reservations")
+    public Mono<ResponseEntity<Reservation>> reserveProduct(@PathVariable int id,
+                                                            @RequestBody Mono<ReservationRequest> body,
+                                                            Authentication authentication) {
+        return body.map(request -> request.getQuantity() < 1
+                ? ResponseEntity.badRequest().<Reservation>build()
+                : ResponseEntity.status(HttpStatus.CREATED)
+                        .body(service.reserveProduct(id, request.getQuantity(), authentication.getName())));
+    }
+
+    // 404 when the reservation doesn't exist, already expired or isn't the user's own
+    @DeleteMapping("/reservations/{reservationId}")
+    public Mono<ResponseEntity<Void>> releaseReservation(@PathVariable String reservationId,
+                                                         Authentication authentication) {
+        return Mono.fromSupplier(() -> service.releaseReservation(reservationId, authentication.getName())
+                ? ResponseEntity.noContent().<Void>build()
+                : ResponseEntity.notFound().<Void>build());
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.server.WebFilterExchange;
+import org.springframework.security.web.server.authentication.RedirectServerAuthenticationFailureHandler;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+    The reactive build's HashingAwareAuthenticationFailureHandler: a failed form login is redirected back to
+    /login?error, except when the password hashing pool is saturated, which is answered with 503 Service Unavailable
+    and a Retry-After header.
+*/
+
+public class HashingAwareServerAuthenticationFailureHandler extends RedirectServerAuthenticationFailureHandler {
+
+    public HashingAwareServerAuthenticationFailureHandler() {
+        super("/login?error");
+    }
+
+    @Override
+    public Mono<Void> onAuthenticationFailure(WebFilterExchange webFilterExchange,
+                                              AuthenticationException exception) {
+        if (exception instanceof HashingCapacityExceededException capacityExceeded) {
+            ServerHttpResponse response = webFilterExchange.getExchange().getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(capacityExceeded.getRetryAfterSeconds()));
+            byte[] body = capacityExceeded.getMessage().getBytes(StandardCharsets.UTF_8);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        }
+        return super.onAuthenticationFailure(webFilterExchange, exception);
+    }
+
+}
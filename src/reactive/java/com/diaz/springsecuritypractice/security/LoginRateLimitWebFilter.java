@@ -0,0 +1,79 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/*
+    The reactive build's LoginRateLimitFilter: runs in the security filter chain just before the form login and turns
+    away login attempts over the LoginRateLimiter's limits with 429 Too Many Requests + Retry-After.
+
+        POST /login       - limited per client IP and per username (the form's 'username' field)
+        POST /auth/token  - limited per client IP here, ReactiveAuthController checks the per-username limit
+
+    Reading the form doesn't consume it, the exchange keeps the parsed form data for the form login that runs next.
+*/
+
+public class LoginRateLimitWebFilter implements WebFilter {
+
+    private static final ServerWebExchangeMatcher FORM_LOGIN =
+            ServerWebExchangeMatchers.pathMatchers(HttpMethod.POST, "/login");
+    private static final ServerWebExchangeMatcher TOKEN_LOGIN =
+            ServerWebExchangeMatchers.pathMatchers(HttpMethod.POST, "/auth/token");
+
+    private final LoginRateLimiter rateLimiter;
+
+    public LoginRateLimitWebFilter(LoginRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!rateLimiter.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        return FORM_LOGIN.matches(exchange).flatMap(formLogin -> {
+            if (formLogin.isMatch()) {
+                long retryAfter = rateLimiter.acquireForIp(remoteAddress(exchange));
+                if (retryAfter > 0) {
+                    return tooManyRequests(exchange.getResponse(), retryAfter);
+                }
+                return exchange.getFormData().flatMap(form -> {
+                    long usernameRetryAfter = rateLimiter.acquireForUsername(form.getFirst("username"));
+                    return usernameRetryAfter > 0
+                            ? tooManyRequests(exchange.getResponse(), usernameRetryAfter)
+                            : chain.filter(exchange);
+                });
+            }
+            return TOKEN_LOGIN.matches(exchange).flatMap(tokenLogin -> {
+                long retryAfter = tokenLogin.isMatch() ? rateLimiter.acquireForIp(remoteAddress(exchange)) : 0;
+                return retryAfter > 0 ? tooManyRequests(exchange.getResponse(), retryAfter) : chain.filter(exchange);
+            });
+        });
+    }
+
+    // behind a proxy set server.forward-headers-strategy so this is the client's address, not the proxy's
+    private static String remoteAddress(ServerWebExchange exchange) {
+        InetSocketAddress address = exchange.getRequest().getRemoteAddress();
+        return address == null || address.getAddress() == null ? null : address.getAddress().getHostAddress();
+    }
+
+    private static Mono<Void> tooManyRequests(ServerHttpResponse response, long retryAfterSeconds) {
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+        byte[] body = "Too many login attempts, try again later".getBytes(StandardCharsets.UTF_8);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.diaz.springsecuritypractice.security;
+import com.diaz.springsecuritypractice.service.ReactiveUserInfoDetailsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.util.matcher.AndServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import reactor.core.scheduler.Scheduler;
+
+import javax.crypto.SecretKey;
+import java.net.InetSocketAddress;
+
+/*
+    SecurityConfig for the reactive build (spring.main.web-application-type=reactive), the same rules for a WebFlux
+    application. The password encoder, user cache, token signing key and the other shared beans come from
+    CredentialsConfig.
+
+    @EnableWebFluxSecurity - the reactive counterpart of @EnableWebSecurity. Instead of a chain of servlet Filters the
+    security checks are WebFilters, and SecurityWebFilterChain is built with ServerHttpSecurity instead of HttpSecurity.
+
+    SecurityContext - a reactive request hops between threads, so the logged in user can't live in a ThreadLocal. It
+    travels in the Reactor Context instead (ReactiveSecurityContextHolder), the form login keeps it in the WebSession.
+
+    Authorization - checked per path in the filter chain (authorizeExchange) rather than with @PreAuthorize on the
+    controller, each path gets the authority its servlet endpoint asks for. The servlet build's per-filter timings
+    (TimedFilterChainDecorator) and bulk sign-up (/products/bulk) have no reactive counterpart.
+*/
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfig {
+
+    @Value("${security.token.issuer:spring-security-practice}")
+    private String tokenIssuer;
+
+    // -1 when the actuator endpoints share the application port
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    // the shared beans from CredentialsConfig
+    @Autowired
+    private BoundedPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private BoundedUserCache userCache;
+
+    @Autowired
+    private SecretKey tokenSigningKey;
+
+    @Autowired
+    private JwtAuthenticationConverter jwtAuthenticationConverter;
+
+    // only there while security.password.rehash.enabled is true
+    @Autowired(required = false)
+    private PasswordRehasher passwordRehasher;
+
+    //Per-stage login timers, see AuthenticationMetrics
+    @Autowired
+    private AuthenticationMetrics authenticationMetrics;
+
+    //Login attempt limits per client IP and username, see security.login-rate-limit.* in application.properties
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    //Spring Boot's default, announces every login to AuthenticationAuditListener
+    @Autowired
+    private AuthenticationEventPublisher authenticationEventPublisher;
+
+    @Bean
+    //Login lookup of UserInfoUserDetailsService, run on the jdbcScheduler
+    public ReactiveUserInfoDetailsService reactiveUserDetailsService(Scheduler jdbcScheduler) {
+        return new ReactiveUserInfoDetailsService(userDetailsService, jdbcScheduler);
+    }
+
+    @Bean
+    //Checks username + password for the form login and /auth/token, BCrypt runs on the HashingExecutor
+    public TimedReactiveAuthenticationManager reactiveAuthenticationManager(
+            ReactiveUserInfoDetailsService reactiveUserDetailsService) {
+        TimedReactiveAuthenticationManager authenticationManager = new TimedReactiveAuthenticationManager(
+                reactiveUserDetailsService, passwordEncoder, userCache, authenticationMetrics,
+                authenticationEventPublisher);
+        if (passwordRehasher != null) {
+            authenticationManager.setPasswordRehasher(passwordRehasher);
+        }
+        return authenticationManager;
+    }
+
+    @Bean
+    //Verifies the signature, expiry and issuer of incoming bearer tokens
+    public ReactiveJwtDecoder jwtDecoder() {
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withSecretKey(tokenSigningKey)
+                .macAlgorithm(MacAlgorithm.HS256)
+                .build();
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(tokenIssuer));
+        return decoder;
+    }
+
+    @Bean
+    //Chain of responsibility, as WebFilters
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         TimedReactiveAuthenticationManager authenticationManager) {
+        http
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .authorizeExchange(exchange -> exchange
+                        .pathMatchers("/products/welcome", "/products/new").permitAll()
+                        .pathMatchers("/auth/token").permitAll()
+
+                        // see SecurityConfig, Prometheus only scrapes without logging in on a separate management port
+                        .matchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                        .matchers(new AndServerWebExchangeMatcher(EndpointRequest.to(PrometheusScrapeEndpoint.class),
+                                request -> onManagementPort(request.getRequest().getLocalAddress())
+                                        ? ServerWebExchangeMatcher.MatchResult.match()
+                                        : ServerWebExchangeMatcher.MatchResult.notMatch()))
+                        .permitAll()
+                        .matchers(EndpointRequest.toAnyEndpoint()).hasAuthority("ROLE_ADMIN")
+
+                        // the authorities ProductController's @PreAuthorize annotations ask for
+                        .pathMatchers("/products/all").hasAuthority("ROLE_ADMIN")
+                        .pathMatchers("/products/**").hasAuthority("ROLE_USER")
+                )
+                // turns away login attempts over the rate limit before any user lookup or password hashing
+                .addFilterBefore(new LoginRateLimitWebFilter(loginRateLimiter), SecurityWebFiltersOrder.FORM_LOGIN)
+                // answers 503 + Retry-After instead of /login?error when the password hashing pool is saturated
+                .formLogin(form -> form
+                        .authenticationManager(authenticationManager)
+                        .authenticationFailureHandler(new HashingAwareServerAuthenticationFailureHandler()))
+                // stateless alternative to the session, authenticates requests carrying a signed bearer token
+                .oauth2ResourceServer(oauth2 -> oauth2
+                        .jwt(jwt -> jwt
+                                .jwtDecoder(jwtDecoder())
+                                .jwtAuthenticationConverter(
+                                        new ReactiveJwtAuthenticationConverterAdapter(jwtAuthenticationConverter))));
+
+        return http.build();
+    }
+
+    // true for a request that came in on a management port of its own, never when the actuator shares the app's port
+    private boolean onManagementPort(InetSocketAddress localAddress) {
+        return managementPort > 0 && managementPort != serverPort && localAddress != null
+                && localAddress.getPort() == managementPort;
+    }
+
+}
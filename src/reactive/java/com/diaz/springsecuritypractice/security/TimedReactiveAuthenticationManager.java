@@ -0,0 +1,156 @@
+package com.diaz.springsecuritypractice.security;
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+    The reactive build's username + password check, what DaoAuthenticationProvider and ProviderManager (see
+    TimedAuthenticationProvider) do for the servlet stack, without blocking the event loop:
+
+        the user comes from the UserCache, or from the ReactiveUserDetailsService on the jdbcScheduler
+        the password is compared on the HashingExecutor (BoundedPasswordEncoder.matchesAsync), a cached user whose
+        password doesn't match is loaded again in case the password was changed since it was cached
+        an unknown user is compared against a dummy hash as well, so the response time doesn't tell which names exist
+        a successful login hands the password to the PasswordRehasher, when there is one
+
+    Spring Security's UserDetailsRepositoryReactiveAuthenticationManager would run BCrypt on Reactor's shared
+    boundedElastic scheduler instead, without the hashing pool's queue limit, deadline and metrics.
+
+    Like the servlet stack, every login is timed in AuthenticationMetrics and announced through the
+    AuthenticationEventPublisher (which AuthenticationAuditListener writes to the audit log). Unknown users and wrong
+    passwords both end in the same BadCredentialsException.
+*/
+
+public class TimedReactiveAuthenticationManager implements ReactiveAuthenticationManager {
+
+    // what DaoAuthenticationProvider compares unknown users' passwords against
+    private static final String USER_NOT_FOUND_PASSWORD = "userNotFoundPassword";
+
+    private final ReactiveUserDetailsService userDetailsService;
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final UserCache userCache;
+    private final AuthenticationMetrics metrics;
+    private final AuthenticationEventPublisher eventPublisher;
+    private final AccountStatusUserDetailsChecker accountChecker = new AccountStatusUserDetailsChecker();
+    private PasswordRehasher passwordRehasher;
+
+    // hashed on the first login of an unknown user
+    private volatile String userNotFoundHash;
+
+    public TimedReactiveAuthenticationManager(ReactiveUserDetailsService userDetailsService,
+                                              BoundedPasswordEncoder passwordEncoder, UserCache userCache,
+                                              AuthenticationMetrics metrics,
+                                              AuthenticationEventPublisher eventPublisher) {
+        this.userDetailsService = userDetailsService;
+        this.passwordEncoder = passwordEncoder;
+        this.userCache = userCache;
+        this.metrics = metrics;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public void setPasswordRehasher(PasswordRehasher passwordRehasher) {
+        this.passwordRehasher = passwordRehasher;
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        String username = authentication.getName();
+        String password = authentication.getCredentials() == null ? "" : authentication.getCredentials().toString();
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return checkCredentials(username, password)
+                    .map(user -> success(authentication, user, password))
+                    .doOnNext(result -> {
+                        metrics.record(AuthenticationMetrics.AUTHENTICATION, AuthenticationMetrics.SUCCESS, start);
+                        eventPublisher.publishAuthenticationSuccess(result);
+                    })
+                    .doOnError(e -> metrics.record(AuthenticationMetrics.AUTHENTICATION, outcome(e), start))
+                    // callers can't tell an unknown user from a wrong password
+                    .onErrorMap(UsernameNotFoundException.class, e -> new BadCredentialsException("Bad credentials"))
+                    .doOnError(AuthenticationException.class,
+                            e -> eventPublisher.publishAuthenticationFailure(e, authentication));
+        });
+    }
+
+    // the user whose password this is, BadCredentialsException or UsernameNotFoundException when it isn't
+    private Mono<UserDetails> checkCredentials(String username, String password) {
+        UserDetails cached = userCache.getUserFromCache(username);
+        if (cached == null) {
+            return loadAndCheck(username, password).doOnNext(userCache::putUserInCache);
+        }
+        return passwordMatches(password, cached)
+                .onErrorResume(BadCredentialsException.class, e -> {
+                    // the password may have changed since the user was cached, check once more against the database
+                    userCache.removeUserFromCache(username);
+                    return loadAndCheck(username, password).doOnNext(userCache::putUserInCache);
+                });
+    }
+
+    private Mono<UserDetails> loadAndCheck(String username, String password) {
+        return userDetailsService.findByUsername(username)
+                .switchIfEmpty(Mono.defer(() -> unknownUser(password)))
+                .flatMap(user -> passwordMatches(password, user));
+    }
+
+    private Mono<UserDetails> passwordMatches(String password, UserDetails user) {
+        accountChecker.check(user);
+        long start = System.nanoTime();
+        return Mono.fromFuture(() -> passwordEncoder.matchesAsync(password, user.getPassword()))
+                // the rest of the login doesn't need the hashing thread
+                .publishOn(Schedulers.parallel())
+                .doOnError(e -> metrics.record(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.ERROR,
+                        start))
+                .flatMap(matches -> {
+                    if (!matches) {
+                        metrics.record(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.BAD_CREDENTIALS,
+                                start);
+                        return Mono.error(new BadCredentialsException("Bad credentials"));
+                    }
+                    metrics.record(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.SUCCESS, start);
+                    return Mono.just(user);
+                });
+    }
+
+    // spends the same hashing time as a wrong password, then fails with UsernameNotFoundException
+    private Mono<UserDetails> unknownUser(String password) {
+        Mono<String> dummyHash = userNotFoundHash != null
+                ? Mono.just(userNotFoundHash)
+                : Mono.fromFuture(() -> passwordEncoder.encodeAsync(USER_NOT_FOUND_PASSWORD))
+                        .doOnNext(hash -> userNotFoundHash = hash);
+        return dummyHash
+                .flatMap(hash -> Mono.fromFuture(() -> passwordEncoder.matchesAsync(password, hash)))
+                .publishOn(Schedulers.parallel())
+                .then(Mono.error(new UsernameNotFoundException("USER NOT FOUND!")));
+    }
+
+    private static String outcome(Throwable e) {
+        if (e instanceof UsernameNotFoundException) {
+            return AuthenticationMetrics.UNKNOWN_USER;
+        }
+        return e instanceof BadCredentialsException
+                ? AuthenticationMetrics.BAD_CREDENTIALS
+                : AuthenticationMetrics.ERROR;
+    }
+
+    // the credentials aren't kept, the authentication ends up in the WebSession for form logins
+    private Authentication success(Authentication authentication, UserDetails user, String password) {
+        if (passwordRehasher != null) {
+            passwordRehasher.rehashIfNeeded(user.getUsername(), password, user.getPassword());
+        }
+        UsernamePasswordAuthenticationToken result =
+                UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities());
+        result.setDetails(authentication.getDetails());
+        return result;
+    }
+
+}
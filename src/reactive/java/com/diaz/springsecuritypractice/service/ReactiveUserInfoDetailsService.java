@@ -0,0 +1,37 @@
+package com.diaz.springsecuritypractice.service;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/*
+    ReactiveUserDetailsService - the reactive build's counterpart of UserDetailsService. findByUsername returns a Mono
+    that emits the user once it is loaded, or completes empty when there is no such user, instead of blocking the
+    caller until the query is done.
+
+    The lookup itself is still UserInfoUserDetailsService (username filter, login query, replica fallback and its
+    metrics), Hibernate has no non-blocking API. It runs on the jdbcScheduler (see ReactiveThreadingConfig) so the
+    query never blocks an event loop thread.
+*/
+
+public class ReactiveUserInfoDetailsService implements ReactiveUserDetailsService {
+
+    private final UserDetailsService userDetailsService;
+    private final Scheduler jdbcScheduler;
+
+    public ReactiveUserInfoDetailsService(UserDetailsService userDetailsService, Scheduler jdbcScheduler) {
+        this.userDetailsService = userDetailsService;
+        this.jdbcScheduler = jdbcScheduler;
+    }
+
+    @Override
+    public Mono<UserDetails> findByUsername(String username) {
+        return Mono.fromCallable(() -> userDetailsService.loadUserByUsername(username))
+                .subscribeOn(jdbcScheduler)
+                // an unknown user is an empty result here, not an error
+                .onErrorResume(UsernameNotFoundException.class, e -> Mono.empty());
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.TokenResponse;
+import com.diaz.springsecuritypractice.service.ProductService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Runs the reactive build on Netty with the in-memory H2 database (the h2 and reactive profiles), only part of
+    ./mvnw -Preactive test. A user signs up, exchanges the password for a bearer token and reads the catalog with it.
+*/
+
+// the test context decides between servlet and reactive before the profiles are read, so it is told here as well
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles({"h2", "reactive"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReactiveProductControllerTest {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private ProductService productService;
+
+    private String token;
+
+    // once for the class, the sign-up stays in the database
+    @BeforeAll
+    void signUpAndLogIn() {
+        client.post().uri("/products/new")
+                .bodyValue(Map.of("name", "reactive-admin", "email", "reactive@example.com",
+                        "password", "password", "roles", "ROLE_ADMIN,ROLE_USER"))
+                .exchange()
+                .expectStatus().isOk();
+
+        TokenResponse response = client.post().uri("/auth/token")
+                .bodyValue(Map.of("username", "reactive-admin", "password", "password"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(TokenResponse.class)
+                .returnResult().getResponseBody();
+        assertNotNull(response);
+        token = response.getAccessToken();
+    }
+
+    @Test
+    void streamsTheCatalogAsNdjson() {
+        List<Product> products = client.get().uri("/products/all")
+                .headers(headers -> headers.setBearerAuth(token))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Product.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(productService.getAllProducts(), products);
+    }
+
+    @Test
+    void productNeedsABearerToken() {
+        client.get().uri("/products/1")
+                .headers(headers -> headers.setBearerAuth(token))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("ETag");
+
+        client.get().uri("/products/1")
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    void wrongPasswordIsRejected() {
+        client.post().uri("/auth/token")
+                .bodyValue(Map.of("username", "reactive-admin", "password", "wrong"))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+}
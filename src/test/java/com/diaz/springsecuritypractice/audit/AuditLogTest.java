@@ -0,0 +1,107 @@
+package com.diaz.springsecuritypractice.audit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Request threads keep recording while the log is stopped under them. Every event they recorded must be accounted
+    for once: either a line in the segments (counted as written) or counted as dropped, none left behind in the buffer.
+*/
+
+class AuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void everyEventRecordedAroundStopIsWrittenOrDropped() throws Exception {
+        AuditLog auditLog = auditLog();
+        auditLog.start();
+
+        int producers = 3;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        List<Future<Integer>> recorded = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String username = "user-" + p;
+            recorded.add(pool.submit(() -> {
+                int events = 0;
+                // keeps going for a while after stop(), those events can only be dropped
+                for (long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300); System.nanoTime() < end; ) {
+                    auditLog.loginSucceeded(username, "127.0.0.1");
+                    events++;
+                }
+                return events;
+            }));
+        }
+        Thread.sleep(100);
+        auditLog.stop();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        long total = 0;
+        for (Future<Integer> producer : recorded) {
+            total += producer.get();
+        }
+        double written = events("written");
+        assertTrue(written > 0, "nothing was written before stop()");
+        assertEquals(total, written + events("dropped"));
+        assertEquals(0, events("failed"));
+        assertEquals(written, lines());
+    }
+
+    private AuditLog auditLog() {
+        AuditLog auditLog = new AuditLog();
+        ReflectionTestUtils.setField(auditLog, "enabled", true);
+        ReflectionTestUtils.setField(auditLog, "directory", directory.toString());
+        ReflectionTestUtils.setField(auditLog, "segmentSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(auditLog, "maxSegments", 0);
+        ReflectionTestUtils.setField(auditLog, "sync", false);
+        ReflectionTestUtils.setField(auditLog, "capacity", 64);
+        ReflectionTestUtils.setField(auditLog, "fullPolicy", AuditLog.FullPolicy.BLOCK);
+        ReflectionTestUtils.setField(auditLog, "blockTimeout", Duration.ofMillis(100));
+        ReflectionTestUtils.setField(auditLog, "batchSize", 16);
+        ReflectionTestUtils.setField(auditLog, "pollInterval", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(auditLog, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(auditLog, "meterRegistry", meterRegistry);
+        return auditLog;
+    }
+
+    private double events(String outcome) {
+        return meterRegistry.counter("audit.events", "outcome", outcome).count();
+    }
+
+    private long lines() throws IOException {
+        long lines = 0;
+        try (Stream<Path> segments = Files.list(directory)) {
+            for (Path segment : segments.toList()) {
+                for (byte b : Files.readAllBytes(segment)) {
+                    if (b == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.diaz.springsecuritypractice.audit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Many producers offering into a small buffer while one consumer drains it, so the ring laps many times and producers
+    keep running into a full buffer. Each event carries its producer and a per-producer sequence number (in 'time'),
+    the consumer must see every number of every producer exactly once and in the order it was offered.
+*/
+
+class AuditRingBufferTest {
+
+    @Test
+    void manyProducersOneConsumerLoseNothing() throws Exception {
+        AuditRingBuffer buffer = new AuditRingBuffer(64);
+        int producers = 4;
+        int eventsPerProducer = 25_000;
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        List<Future<Integer>> rejected = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String producer = String.valueOf(p);
+            rejected.add(pool.submit(() -> {
+                int full = 0;
+                start.await();
+                for (int sequence = 0; sequence < eventsPerProducer; sequence++) {
+                    AuditEvent event = new AuditEvent(sequence, AuditEvent.Type.LOGIN_SUCCESS, producer, null, null, 0);
+                    while (!buffer.offer(event)) {
+                        full++;
+                        // let the consumer run, on a machine with few cores spinning would starve it
+                        Thread.yield();
+                    }
+                }
+                return full;
+            }));
+        }
+
+        // next sequence number expected from each producer
+        int[] next = new int[producers];
+        long total = (long) producers * eventsPerProducer;
+        long received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        start.countDown();
+        while (received < total) {
+            assertTrue(System.nanoTime() - deadline < 0, "only " + received + " of " + total + " events arrived");
+            received += buffer.drain(event -> {
+                int producer = Integer.parseInt(event.username());
+                assertEquals(next[producer], event.time(), "producer " + producer);
+                next[producer]++;
+            }, 32);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        int full = 0;
+        for (Future<Integer> producer : rejected) {
+            full += producer.get();
+        }
+        assertTrue(full > 0, "the buffer never filled up, the test didn't lap the ring under contention");
+        for (int p = 0; p < producers; p++) {
+            assertEquals(eventsPerProducer, next[p]);
+        }
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.drain(event -> fail("drained " + event), 1));
+    }
+
+    @Test
+    void fullBufferRefusesUntilDrained() {
+        AuditRingBuffer buffer = new AuditRingBuffer(3);
+        assertEquals(4, buffer.capacity());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(event(lap * 4 + i)));
+            }
+            assertFalse(buffer.offer(event(-1)));
+            assertEquals(4, buffer.size());
+
+            List<Long> drained = new ArrayList<>();
+            assertEquals(4, buffer.drain(event -> drained.add(event.time()), 10));
+            assertEquals(List.of(lap * 4L, lap * 4L + 1, lap * 4L + 2, lap * 4L + 3), drained);
+            assertEquals(0, buffer.size());
+        }
+    }
+
+    private static AuditEvent event(long number) {
+        return new AuditEvent(number, AuditEvent.Type.REGISTRATION, "user", null, null, 0);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.diaz.springsecuritypractice.audit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Segment files of 100 bytes and events of 25, so every segment holds exactly four events. Rotation cuts the full
+    segment down to what was written, max-segments deletes the oldest ones, and a restart continues after the newest
+    segment on disk instead of writing into it.
+*/
+
+class AuditSegmentsTest {
+
+    private static final int SEGMENT_SIZE = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rotatesAndKeepsTheNewestSegments() throws IOException {
+        try (AuditSegments segments = new AuditSegments(directory, SEGMENT_SIZE, 2)) {
+            for (int i = 0; i < 10; i++) {
+                append(segments, i);
+            }
+            assertEquals(directory.resolve("audit-00000003.log"), segments.currentSegment());
+        }
+
+        // events 0-3 went to the deleted segment 1, 4-7 to segment 2, 8 and 9 to segment 3 which was cut at close
+        assertEquals(List.of("audit-00000002.log", "audit-00000003.log"), segmentNames());
+        assertEquals(events(4, 8), read("audit-00000002.log"));
+        assertEquals(events(8, 10), read("audit-00000003.log"));
+    }
+
+    @Test
+    void zeroMaxSegmentsKeepsEverySegment() throws IOException {
+        try (AuditSegments segments = new AuditSegments(directory, SEGMENT_SIZE, 0)) {
+            for (int i = 0; i < 13; i++) {
+                append(segments, i);
+            }
+        }
+        assertEquals(List.of("audit-00000001.log", "audit-00000002.log", "audit-00000003.log", "audit-00000004.log"),
+                segmentNames());
+        assertEquals(events(0, 4), read("audit-00000001.log"));
+        assertEquals(events(12, 13), read("audit-00000004.log"));
+    }
+
+    @Test
+    void restartBeginsANewSegment() throws IOException {
+        try (AuditSegments segments = new AuditSegments(directory, SEGMENT_SIZE, 2)) {
+            append(segments, 0);
+        }
+        try (AuditSegments segments = new AuditSegments(directory, SEGMENT_SIZE, 2)) {
+            assertEquals(directory.resolve("audit-00000002.log"), segments.currentSegment());
+            append(segments, 1);
+        }
+        assertEquals(events(0, 1), read("audit-00000001.log"));
+        assertEquals(events(1, 2), read("audit-00000002.log"));
+    }
+
+    @Test
+    void eventLargerThanASegmentIsRefused() throws IOException {
+        try (AuditSegments segments = new AuditSegments(directory, SEGMENT_SIZE, 2)) {
+            assertThrows(IOException.class, () -> segments.append(new byte[SEGMENT_SIZE + 1], SEGMENT_SIZE + 1));
+            append(segments, 0);
+        }
+        assertEquals(events(0, 1), read("audit-00000001.log"));
+    }
+
+    private static void append(AuditSegments segments, int number) throws IOException {
+        byte[] event = event(number).getBytes(StandardCharsets.UTF_8);
+        segments.append(event, event.length);
+    }
+
+    // 25 bytes, newline included
+    private static String event(int number) {
+        return String.format("{\"event\":%14d}\n", number);
+    }
+
+    private static String events(int from, int to) {
+        StringBuilder events = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            events.append(event(i));
+        }
+        return events.toString();
+    }
+
+    private String read(String segment) throws IOException {
+        return Files.readString(directory.resolve(segment), StandardCharsets.UTF_8);
+    }
+
+    private List<String> segmentNames() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.diaz.springsecuritypractice.config;
+import com.diaz.springsecuritypractice.entity.UserInfo;
+import com.diaz.springsecuritypractice.repository.UserInfoRepository;
+import com.diaz.springsecuritypractice.service.ProductService;
+import com.diaz.springsecuritypractice.service.UserInfoUserDetailsService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Primary and replica are two in-memory H2 databases (the h2 and replica profiles) that don't replicate, so which
+    one a query ran on shows in what it finds: a user inserted only into the replica, one saved only to the primary.
+    The replica is shut down in the last test, after that reads have to fall back to the primary.
+*/
+
+@SpringBootTest
+@ActiveProfiles({"h2", "replica"})
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class ReadWriteRoutingDataSourceTest {
+
+    // DB_CLOSE_DELAY keeps the replica alive between connections until it is shut down
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica_db;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+            + "DB_CLOSE_DELAY=-1";
+
+    private static SingleConnectionDataSource replica;
+
+    @Autowired
+    private UserInfoRepository userInfoRepository;
+
+    @Autowired
+    private UserInfoUserDetailsService userDetailsService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    // runs before the application context starts, its replica pool needs the database to exist
+    @BeforeAll
+    static void createReplica() {
+        replica = new SingleConnectionDataSource(REPLICA_URL, "sa", "", true);
+        Flyway.configure().dataSource(replica).load().migrate();
+        new JdbcTemplate(replica).update("INSERT INTO user_info (name, email, password, roles) VALUES (?, ?, ?, ?)",
+                "replica-only", "replica@example.com", "{noop}unused", "ROLE_USER");
+    }
+
+    @AfterAll
+    static void closeReplica() {
+        replica.destroy();
+    }
+
+    @Test
+    @Order(1)
+    void readOnlyTransactionsGoToTheReplica() {
+        assertTrue(userInfoRepository.findCredentialsByName("replica-only").isPresent());
+        assertFalse(userInfoRepository.findCredentialsByNameOnPrimary("replica-only").isPresent());
+        assertEquals(0, count("replica-only"));
+    }
+
+    @Test
+    @Order(2)
+    void writesGoToThePrimary() {
+        productService.addUserInfo(new UserInfo(0, "primary-only", "primary@example.com", "password", "ROLE_USER"));
+
+        assertEquals(1, count("primary-only"));
+        assertFalse(userInfoRepository.findCredentialsByName("primary-only").isPresent());
+        // the login finds the user anyway, a miss on the replica is looked up again on the primary
+        assertEquals("primary-only", userDetailsService.loadUserByUsername("primary-only").getUsername());
+    }
+
+    @Test
+    @Order(3)
+    void readsFallBackToThePrimaryWhileTheReplicaIsDown() throws Exception {
+        replica.getConnection().createStatement().execute("SHUTDOWN");
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (routingDataSource.healthyReplicas() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, routingDataSource.healthyReplicas());
+
+        assertTrue(userInfoRepository.findCredentialsByName("primary-only").isPresent());
+        assertFalse(userInfoRepository.findCredentialsByName("replica-only").isPresent());
+    }
+
+    // outside a transaction JdbcTemplate always reads the primary
+    private int count(String name) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_info WHERE name = ?", Integer.class, name);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.dto.TokenResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+    POST /auth/token end to end on the h2 profile: a user signs up through /products/new, exchanges the password for a
+    bearer token and reads products with it. The token carries the user's roles, nothing more.
+*/
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AuthControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // once for the class, the sign-up stays in the database
+    @BeforeAll
+    void signUp() throws Exception {
+        mockMvc.perform(post("/products/new")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("name", "token-user", "email", "token@example.com",
+                                "password", "password", "roles", "ROLE_USER"))))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void validCredentialsGetABearerToken() throws Exception {
+        TokenResponse response = objectMapper.readValue(token("token-user", "password")
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), TokenResponse.class);
+
+        assertEquals("Bearer", response.getTokenType());
+        assertTrue(response.getExpiresIn() > 0);
+        mockMvc.perform(get("/products/1")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + response.getAccessToken()))
+                .andExpect(status().isOk());
+        // ROLE_USER only, the whole catalog needs ROLE_ADMIN
+        mockMvc.perform(get("/products/all")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + response.getAccessToken()))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void wrongPasswordAndUnknownUserGetTheSameAnswer() throws Exception {
+        token("token-user", "wrong").andExpect(status().isUnauthorized());
+        token("nobody", "password").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void tamperedTokenIsRejected() throws Exception {
+        TokenResponse response = objectMapper.readValue(token("token-user", "password")
+                .andReturn().getResponse().getContentAsString(), TokenResponse.class);
+        String token = response.getAccessToken();
+        // flip a character of the signature
+        String tampered = token.substring(0, token.length() - 2)
+                + (token.charAt(token.length() - 2) == 'A' ? 'B' : 'A') + token.charAt(token.length() - 1);
+
+        mockMvc.perform(get("/products/1").header(HttpHeaders.AUTHORIZATION, "Bearer " + tampered))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private ResultActions token(String username, String password) throws Exception {
+        return mockMvc.perform(post("/auth/token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("username", username, "password", password))));
+    }
+
+    private String json(Object value) throws Exception {
+        return objectMapper.writeValueAsString(value);
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.dto.BulkImportResult;
+import com.diaz.springsecuritypractice.security.TokenService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+    POST /products/bulk with rows that import, rows that fail validation or mapping, a duplicate name the database
+    rejects, and broken JSON. Batches of three, so the duplicate fails a whole batch and the row by row retry has to
+    find it. Every imported user, and only those, shows up in the audit log as a registration.
+*/
+
+@SpringBootTest(properties = {"users.import.batch-size=3", "audit.log.directory=" + BulkImportTest.AUDIT_DIRECTORY,
+        "audit.log.segment-size=64KB"})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class BulkImportTest {
+
+    // the context starts a new segment in its own directory, only this class's events end up in it. Small segments,
+    // the test reads the newest one whole while waiting for the writer
+    static final String AUDIT_DIRECTORY = "target/audit-bulk-import";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String bearer;
+
+    @BeforeEach
+    void issueAdminToken() {
+        bearer = "Bearer " + tokenService.issue(UsernamePasswordAuthenticationToken.authenticated(
+                "admin", null, List.of(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+    }
+
+    @Test
+    void goodRowsAreImportedAndEveryBadRowIsReported() throws Exception {
+        BulkImportResult result = importUsers(MediaType.APPLICATION_JSON, """
+                [
+                  {"name": "bulk-a", "email": "a@example.com", "password": "password", "roles": "ROLE_USER"},
+                  {"name": "bulk-b", "email": "b@example.com", "password": "password", "roles": "ROLE_USER"},
+                  {"name": "bulk-no-password", "roles": "ROLE_USER"},
+                  {"name": {"first": "bulk"}, "password": "password", "roles": "ROLE_USER"},
+                  {"name": "bulk-a", "email": "again@example.com", "password": "password", "roles": "ROLE_USER"},
+                  {"name": "bulk-c", "email": "c@example.com", "password": "password", "roles": "ROLE_USER"}
+                ]
+                """);
+
+        assertEquals(6, result.getReceived());
+        assertEquals(3, result.getImported());
+        assertEquals(3, result.getFailed());
+        assertEquals(List.of(3, 4, 5), result.getFailures().stream().map(BulkImportResult.RowFailure::getRow).toList());
+        assertEquals("password is required", result.getFailures().get(0).getReason());
+        assertTrue(result.getFailures().get(1).getReason().startsWith("Invalid user"));
+        assertEquals("bulk-a", result.getFailures().get(2).getName());
+        assertTrue(result.getFailures().get(2).getReason().startsWith("Rejected by database"));
+        assertEquals(3, countUsers("bulk-%"));
+        assertEquals(List.of("bulk-a", "bulk-b", "bulk-c"), auditedRegistrations("bulk-", 3));
+
+        // imported users log in with the password they were imported with
+        mockMvc.perform(post("/auth/token")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\": \"bulk-c\", \"password\": \"password\"}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void brokenJsonStopsTheImportAndKeepsTheRowsBeforeIt() throws Exception {
+        BulkImportResult result = importUsers(MediaType.APPLICATION_NDJSON, """
+                {"name": "ndjson-a", "password": "password", "roles": "ROLE_USER"}
+                {"name": "ndjson-b", "password": }
+                {"name": "ndjson-c", "password": "password", "roles": "ROLE_USER"}
+                """);
+
+        assertEquals(2, result.getReceived());
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertEquals(2, result.getFailures().get(0).getRow());
+        assertTrue(result.getFailures().get(0).getReason().startsWith("Malformed JSON"));
+        assertEquals(1, countUsers("ndjson-%"));
+    }
+
+    private BulkImportResult importUsers(MediaType contentType, String body) throws Exception {
+        String json = mockMvc.perform(post("/products/bulk")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .contentType(contentType)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(json, BulkImportResult.class);
+    }
+
+    // names of the REGISTRATION events in the newest audit segment, waits a moment for the writer to write 'expected'
+    private List<String> auditedRegistrations(String namePrefix, int expected) throws Exception {
+        List<String> names = List.of();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            names = new ArrayList<>();
+            for (String line : newestAuditSegment().split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Map<?, ?> event = objectMapper.readValue(line, Map.class);
+                String name = (String) event.get("username");
+                if ("REGISTRATION".equals(event.get("type")) && name.startsWith(namePrefix)) {
+                    names.add(name);
+                }
+            }
+            if (names.size() >= expected) {
+                break;
+            }
+            Thread.sleep(20);
+        }
+        return names;
+    }
+
+    // a segment that is still open ends in zero bytes after the last event
+    private static String newestAuditSegment() throws IOException {
+        try (Stream<Path> segments = Files.list(Path.of(AUDIT_DIRECTORY))) {
+            Path newest = segments.max(Comparator.comparing(Path::getFileName)).orElseThrow();
+            return new String(Files.readAllBytes(newest), StandardCharsets.UTF_8).replace("\0", "");
+        }
+    }
+
+    private int countUsers(String namePattern) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_info WHERE name LIKE ?", Integer.class,
+                namePattern);
+    }
+
+}
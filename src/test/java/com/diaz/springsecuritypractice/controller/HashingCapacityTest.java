@@ -0,0 +1,153 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.security.AuthenticationMetrics;
+import com.diaz.springsecuritypractice.security.HashingCapacityExceededException;
+import com.diaz.springsecuritypractice.security.HashingExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+    Logins against a saturated HashingExecutor, one hashing thread and room for one more task in the queue. The thread
+    is held by a task that waits on a latch, so what the pool does with the next login is decided by the test and not
+    by timing: with the queue full it's rejected on the spot, with a free queue slot it waits out the deadline. Both
+    end in 503 + Retry-After, from the form login and from /auth/token, without hashing a second time.
+*/
+
+@SpringBootTest(properties = {
+        "security.hashing.concurrency=1",
+        "security.hashing.queue-capacity=1",
+        "security.hashing.queue-deadline=300ms"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class HashingCapacityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HashingExecutor hashingExecutor;
+
+    @Autowired
+    private AuthenticationMetrics metrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private CountDownLatch release;
+
+    // signed up and logged in once while the pool is free, so later logins find the user in the UserCache
+    @BeforeAll
+    void signUp() throws Exception {
+        mockMvc.perform(post("/products/new")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "hashing-user",
+                                "email", "hashing@example.com", "password", "password", "roles", "ROLE_USER"))))
+                .andExpect(status().isOk());
+        token().andExpect(status().isOk());
+    }
+
+    @BeforeEach
+    void holdThePool() throws Exception {
+        drain();
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void releaseThePool() throws Exception {
+        release.countDown();
+        drain();
+    }
+
+    @Test
+    void fullQueueRejectsRightAway() throws Exception {
+        holdTheThread();
+        fillTheQueue();
+        long matches = passwordMatchErrors();
+
+        token().andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                        .param("username", "hashing-user")
+                        .param("password", "password"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        // one failed password check per login, the cached user isn't reloaded and checked again
+        assertEquals(matches + 2, passwordMatchErrors());
+    }
+
+    @Test
+    void queuedLoginGivesUpAtTheDeadline() throws Exception {
+        holdTheThread();
+        long matches = passwordMatchErrors();
+
+        long start = System.nanoTime();
+        token().andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(waitedMillis >= 300, "answered after " + waitedMillis + " ms, before the deadline");
+        assertEquals(matches + 1, passwordMatchErrors());
+    }
+
+    // occupies the hashing thread until the test is over, returns once the thread has picked the task up
+    private void holdTheThread() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        hashingExecutor.submit(() -> {
+            running.countDown();
+            release.await();
+            return null;
+        });
+        running.await();
+    }
+
+    // takes the queue's one slot while the thread is held
+    private void fillTheQueue() {
+        hashingExecutor.submit(() -> null);
+    }
+
+    // the one thread works through the queue in order, once a no-op gets a turn whatever was queued before it (a
+    // test's blockers and dropped logins) is gone
+    private void drain() throws InterruptedException {
+        while (true) {
+            try {
+                hashingExecutor.run(() -> null);
+                return;
+            } catch (HashingCapacityExceededException e) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private long passwordMatchErrors() {
+        return metrics.timer(AuthenticationMetrics.PASSWORD_MATCH, AuthenticationMetrics.ERROR).count();
+    }
+
+    private ResultActions token() throws Exception {
+        return mockMvc.perform(post("/auth/token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("username", "hashing-user", "password", "password"))));
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.diaz.springsecuritypractice.controller;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.ProductPage;
+import com.diaz.springsecuritypractice.dto.Reservation;
+import com.diaz.springsecuritypractice.dto.StockLevel;
+import com.diaz.springsecuritypractice.security.TokenService;
+import com.diaz.springsecuritypractice.service.ProductService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+    /products/all through the whole security filter chain, with the default 99-product catalog: the JSON array for
+    browsers and JSON clients, NDJSON only when it is asked for, gzip, and cursor pages. ETags and 304s for /all, its
+    gzip copy and single products, also across a catalog reload. Also the live stock of a product next to its catalog
+    quantity.
+*/
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ProductControllerTest {
+
+    private static final TypeReference<List<Product>> PRODUCT_LIST = new TypeReference<>() { };
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String bearer;
+
+    @BeforeEach
+    void issueAdminToken() {
+        bearer = "Bearer " + tokenService.issue(UsernamePasswordAuthenticationToken.authenticated("admin", null,
+                List.of(new SimpleGrantedAuthority("ROLE_ADMIN"), new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    @Test
+    void jsonArrayUnlessNdjsonIsAsked() throws Exception {
+        for (String accept : List.of("*/*", "text/html,application/xhtml+xml,*/*;q=0.8", "application/json")) {
+            String json = mockMvc.perform(get("/products/all")
+                            .header(HttpHeaders.AUTHORIZATION, bearer)
+                            .header(HttpHeaders.ACCEPT, accept))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                    .andReturn().getResponse().getContentAsString();
+
+            assertEquals(productService.getAllProducts(), objectMapper.readValue(json, PRODUCT_LIST), accept);
+        }
+    }
+
+    @Test
+    void ndjsonStreamsOneProductPerLine() throws Exception {
+        MvcResult started = mockMvc.perform(get("/products/all")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String ndjson = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<Product> products = new ArrayList<>();
+        for (String line : ndjson.split("\n")) {
+            products.add(objectMapper.readValue(line, Product.class));
+        }
+        assertEquals(productService.getAllProducts(), products);
+    }
+
+    @Test
+    void pagesFollowTheCursorToTheEnd() throws Exception {
+        ProductPage first = page("/products/all?limit=2");
+        assertEquals(List.of(1, 2), ids(first));
+        assertEquals(2, first.getNextCursor());
+
+        ProductPage next = page("/products/all?after=" + first.getNextCursor() + "&limit=2");
+        assertEquals(List.of(3, 4), ids(next));
+        assertEquals(4, next.getNextCursor());
+
+        ProductPage last = page("/products/all?after=97&limit=5");
+        assertEquals(List.of(98, 99), ids(last));
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    void unreadableQualityInAcceptEncodingCountsAsNone() throws Exception {
+        mockMvc.perform(get("/products/all")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=x"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+
+        assertTrue(ProductController.acceptsGzip("br, gzip;q=0.5"));
+        assertTrue(ProductController.acceptsGzip("*;q="));
+        assertFalse(ProductController.acceptsGzip("gzip;q=0"));
+        assertFalse(ProductController.acceptsGzip("identity"));
+    }
+
+    @Test
+    void explicitGzipWinsOverTheWildcard() {
+        assertTrue(ProductController.acceptsGzip("*;q=0, gzip"));
+        assertTrue(ProductController.acceptsGzip("gzip, *;q=0"));
+        assertFalse(ProductController.acceptsGzip("*, gzip;q=0"));
+        assertFalse(ProductController.acceptsGzip("gzip;q=0.000, *"));
+        assertTrue(ProductController.acceptsGzip("br, *"));
+        assertFalse(ProductController.acceptsGzip("br, *;q=0"));
+        assertTrue(ProductController.acceptsGzip("GZIP;q=0.1"));
+        assertFalse(ProductController.acceptsGzip(null));
+        assertFalse(ProductController.acceptsGzip(""));
+    }
+
+    @Test
+    void allAnswersNotModifiedWhileItsEtagMatches() throws Exception {
+        String etag = etagOf(get("/products/all"));
+        assertNotModified(get("/products/all"), etag);
+
+        // the gzip copy is other bytes under an ETag of its own
+        String gzipEtag = etagOf(get("/products/all").header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+        assertNotEquals(etag, gzipEtag);
+        assertNotModified(get("/products/all").header(HttpHeaders.ACCEPT_ENCODING, "gzip"), gzipEtag);
+        mockMvc.perform(get("/products/all")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, gzipEtag))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+    }
+
+    @Test
+    void productAnswersNotModifiedButNotForAnUnknownId() throws Exception {
+        String etag = etagOf(get("/products/1"));
+        assertNotModified(get("/products/1"), etag);
+
+        mockMvc.perform(get("/products/100000")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void reloadedCatalogHasANewEtag() throws Exception {
+        String etag = etagOf(get("/products/all"));
+        String productEtag = etagOf(get("/products/1"));
+
+        productService.loadProductsFromDb();
+
+        // the old ETag no longer matches, the new catalog comes back in full
+        MockHttpServletResponse reloaded = mockMvc.perform(get("/products/all")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertNotEquals(etag, reloaded.getHeader(HttpHeaders.ETAG));
+        assertEquals(productService.getAllProducts(),
+                objectMapper.readValue(reloaded.getContentAsString(), PRODUCT_LIST));
+        mockMvc.perform(get("/products/1")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.IF_NONE_MATCH, productEtag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void stockCountsReservationsWhileTheCatalogQuantityStays() throws Exception {
+        Product product = productService.getAllProducts().stream()
+                .filter(candidate -> candidate.getQuantity() > 0)
+                .findFirst().orElseThrow();
+        String uri = "/products/" + product.getProductId();
+
+        String reservation = mockMvc.perform(post(uri + "/reservations")
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"quantity\": 1}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        try {
+            assertEquals(product.getQuantity() - 1, read(uri + "/stock", StockLevel.class).getAvailable());
+            assertEquals(product.getQuantity(), read(uri, Product.class).getQuantity());
+        } finally {
+            mockMvc.perform(delete("/products/reservations/"
+                            + objectMapper.readValue(reservation, Reservation.class).getReservationId())
+                            .header(HttpHeaders.AUTHORIZATION, bearer))
+                    .andExpect(status().isNoContent());
+        }
+        assertEquals(product.getQuantity(), read(uri + "/stock", StockLevel.class).getAvailable());
+    }
+
+    private String etagOf(MockHttpServletRequestBuilder request) throws Exception {
+        String etag = mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        return etag;
+    }
+
+    // 304 with the same ETag and no body
+    private void assertNotModified(MockHttpServletRequestBuilder request, String etag) throws Exception {
+        mockMvc.perform(request
+                        .header(HttpHeaders.AUTHORIZATION, bearer)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    private <T> T read(String uri, Class<T> type) throws Exception {
+        String json = mockMvc.perform(get(uri).header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(json, type);
+    }
+
+    private ProductPage page(String uri) throws Exception {
+        return read(uri, ProductPage.class);
+    }
+
+    private static List<Integer> ids(ProductPage page) {
+        return page.getProducts().stream().map(Product::getProductId).toList();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.diaz.springsecuritypractice.security;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// the actuator on the application port: health for anyone, Prometheus and the rest for admins. Tests switch metrics
+// export off by default, @AutoConfigureObservability brings the Prometheus endpoint back
+@SpringBootTest
+@AutoConfigureObservability
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ActuatorSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Test
+    void healthIsOpen() throws Exception {
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+    }
+
+    @Test
+    void prometheusNeedsAnAdmin() throws Exception {
+        int anonymous = mockMvc.perform(get("/actuator/prometheus")).andReturn().getResponse().getStatus();
+        assertTrue(anonymous == 401 || anonymous == 302, "anonymous got " + anonymous);
+
+        mockMvc.perform(get("/actuator/prometheus").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_USER")))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/prometheus").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_ADMIN")))
+                .andExpect(status().isOk());
+    }
+
+    private String bearer(String role) {
+        return "Bearer " + tokenService.issue(UsernamePasswordAuthenticationToken.authenticated(
+                "actuator-" + role, null, List.of(new SimpleGrantedAuthority(role))));
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.diaz.springsecuritypractice.security;
+import com.diaz.springsecuritypractice.dto.UserCredentials;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the registry is static, every test uses role names of its own
+class AuthorityRegistryTest {
+
+    @Test
+    void rolesNoAnnotationChecksAreNeitherInternedNorGivenABit() {
+        int generation = AuthorityRegistry.generation();
+
+        UserInfoUserDetails user = user("ROLE_MADE_UP_BY_A_SIGN_UP");
+
+        assertNotSame(AuthorityRegistry.intern("ROLE_MADE_UP_BY_A_SIGN_UP"),
+                AuthorityRegistry.intern("ROLE_MADE_UP_BY_A_SIGN_UP"));
+        assertEquals(0L, AuthorityRegistry.bitOf("ROLE_MADE_UP_BY_A_SIGN_UP"));
+        assertEquals(0L, user.getAuthorityBits());
+        assertEquals("ROLE_MADE_UP_BY_A_SIGN_UP", user.getAuthorities().iterator().next().getAuthority());
+        assertEquals(generation, AuthorityRegistry.generation());
+    }
+
+    @Test
+    void registeredRolesShareOneInstanceAndABit() {
+        long bit = AuthorityRegistry.register("ROLE_REGISTERED_TEST");
+
+        UserInfoUserDetails user = user("ROLE_REGISTERED_TEST, ROLE_UNREGISTERED_TEST");
+
+        assertNotEquals(0L, bit);
+        assertSame(AuthorityRegistry.intern("ROLE_REGISTERED_TEST"), user.getAuthorities().iterator().next());
+        assertEquals(bit, user.getAuthorityBits());
+        assertEquals(bit, AuthorityRegistry.bitsOf(authentication(user)));
+    }
+
+    @Test
+    void roleRegisteredAfterTheUserWasLoadedStillCounts() {
+        UserInfoUserDetails user = user("ROLE_LATE_TEST");
+        assertEquals(0L, user.getAuthorityBits());
+
+        long bit = AuthorityRegistry.register("ROLE_LATE_TEST");
+
+        assertEquals(bit, AuthorityRegistry.bitsOf(authentication(user)));
+    }
+
+    // each thread must see its own role counted once register returns, whichever thread finishes first
+    @Test
+    void generationNeverGoesBack() throws Exception {
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> seen = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String role = "ROLE_CONCURRENT_TEST_" + t;
+                seen.add(pool.submit(() -> {
+                    start.await();
+                    int before = AuthorityRegistry.generation();
+                    AuthorityRegistry.register(role);
+                    return new int[] {before, AuthorityRegistry.generation()};
+                }));
+            }
+            int generation = AuthorityRegistry.generation();
+            start.countDown();
+            for (Future<int[]> future : seen) {
+                int[] beforeAndAfter = future.get();
+                assertTrue(beforeAndAfter[1] > beforeAndAfter[0], beforeAndAfter[0] + " -> " + beforeAndAfter[1]);
+            }
+            assertTrue(AuthorityRegistry.generation() >= generation + threads);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static UserInfoUserDetails user(String roles) {
+        return new UserInfoUserDetails(new UserCredentials("user", "{noop}password", roles));
+    }
+
+    private static Authentication authentication(UserInfoUserDetails user) {
+        return UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities());
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.diaz.springsecuritypractice.security;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedUserCacheTest {
+
+    @Test
+    void smallCacheEvictsTheLeastRecentlyUsedUser() {
+        BoundedUserCache cache = new BoundedUserCache(2, Duration.ofMinutes(5));
+        cache.putUserInCache(user("a"));
+        cache.putUserInCache(user("b"));
+        assertNotNull(cache.getUserFromCache("a"));
+
+        cache.putUserInCache(user("c"));
+
+        assertNull(cache.getUserFromCache("b"));
+        assertNotNull(cache.getUserFromCache("a"));
+        assertNotNull(cache.getUserFromCache("c"));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    void stripedCacheNeverHoldsMoreThanMaxSize() {
+        BoundedUserCache cache = new BoundedUserCache(1000, Duration.ofMinutes(5));
+        for (int i = 0; i < 5000; i++) {
+            cache.putUserInCache(user("user" + i));
+        }
+        assertTrue(cache.size() <= 1000, "size " + cache.size());
+        assertEquals(5000 - cache.size(), cache.evictionCount());
+    }
+
+    @Test
+    void expiredUsersAreMisses() {
+        BoundedUserCache cache = new BoundedUserCache(10, Duration.ZERO);
+        cache.putUserInCache(user("a"));
+
+        assertNull(cache.getUserFromCache("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void concurrentLoginsAllHit() throws InterruptedException {
+        BoundedUserCache cache = new BoundedUserCache(10_000, Duration.ofMinutes(5));
+        for (int i = 0; i < 100; i++) {
+            cache.putUserInCache(user("user" + i));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    assertNotNull(cache.getUserFromCache("user" + (i % 100)));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000, cache.hitCount());
+        assertEquals(0, cache.missCount());
+    }
+
+    private static UserDetails user(String name) {
+        return User.withUsername(name).password("{noop}password").roles("USER").build();
+    }
+
+}
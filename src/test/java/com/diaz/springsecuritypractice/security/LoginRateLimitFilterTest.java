@@ -0,0 +1,101 @@
+package com.diaz.springsecuritypractice.security;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+    Login attempts over the limits, through the whole security filter chain: 4 attempts per IP and 2 per username a
+    minute. Each test sends from IPs of its own and tries names nobody signed up with, so a wrong password is a 401 (or
+    a redirect back to the form) and the only 429s are the limiter's. The limits are far below the defaults, so this
+    class gets a context, and a rate limiter, of its own. Plenty of buckets, so the few names and IPs used here
+    practically never share one.
+*/
+
+@SpringBootTest(properties = {"security.login-rate-limit.per-ip.requests=4",
+        "security.login-rate-limit.per-username.requests=2", "security.login-rate-limit.buckets=1048576"})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class LoginRateLimitFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void formLoginIsLimitedPerUsername() throws Exception {
+        formLogin("10.0.1.1", "form-alice").andExpect(status().is3xxRedirection());
+        formLogin("10.0.1.1", "form-alice").andExpect(status().is3xxRedirection());
+        assertTooManyRequests(formLogin("10.0.1.1", "form-alice"));
+        // the same name in other case is the same user, from any IP
+        assertTooManyRequests(formLogin("10.0.1.2", "FORM-ALICE"));
+
+        formLogin("10.0.1.1", "form-bob").andExpect(status().is3xxRedirection());
+    }
+
+    @Test
+    void formLoginIsLimitedPerIp() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            formLogin("10.0.2.1", "form-user-" + i).andExpect(status().is3xxRedirection());
+        }
+        assertTooManyRequests(formLogin("10.0.2.1", "form-user-4"));
+
+        formLogin("10.0.2.2", "form-user-4").andExpect(status().is3xxRedirection());
+    }
+
+    @Test
+    void tokenIsLimitedPerIp() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            token("10.0.3.1", "token-user-" + i).andExpect(status().isUnauthorized());
+        }
+        assertTooManyRequests(token("10.0.3.1", "token-user-4"));
+
+        token("10.0.3.2", "token-user-4").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void tokenIsLimitedPerUsernameAcrossIps() throws Exception {
+        token("10.0.4.1", "token-carol").andExpect(status().isUnauthorized());
+        token("10.0.4.2", "token-carol").andExpect(status().isUnauthorized());
+        assertTooManyRequests(token("10.0.4.3", "token-carol"));
+
+        token("10.0.4.3", "token-dave").andExpect(status().isUnauthorized());
+    }
+
+    private static void assertTooManyRequests(ResultActions result) throws Exception {
+        result.andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+    }
+
+    private ResultActions formLogin(String ip, String username) throws Exception {
+        return mockMvc.perform(post("/login")
+                .with(from(ip))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .param("username", username)
+                .param("password", "wrong-password"));
+    }
+
+    private ResultActions token(String ip, String username) throws Exception {
+        return mockMvc.perform(post("/auth/token")
+                .with(from(ip))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\": \"" + username + "\", \"password\": \"wrong-password\"}"));
+    }
+
+    private static RequestPostProcessor from(String ip) {
+        return request -> {
+            request.setRemoteAddr(ip);
+            return request;
+        };
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.diaz.springsecuritypractice.security;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    One scope's GCRA buckets with the clock stepped by hand: 3 requests per 3 seconds, so a token refills every second.
+    The seed is fixed, with it "alice" and "bob" land on different slots of the 1024.
+*/
+
+class LoginRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // any point in time, bucket times are measured from an origin a day before the limiter starts
+    private static final long NOW = TimeUnit.DAYS.toNanos(1);
+
+    private final Counter rejected = new SimpleMeterRegistry().counter("rejected");
+    private final LoginRateLimiter.Buckets buckets =
+            new LoginRateLimiter.Buckets(1024, 3, Duration.ofSeconds(3), 42L, rejected);
+
+    @Test
+    void burstThenOneTokenPerInterval() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, buckets.acquire("alice", NOW), "attempt " + i + " of the burst");
+        }
+        assertEquals(1, buckets.acquire("alice", NOW));
+        assertEquals(1, rejected.count());
+
+        // a refused attempt takes no token, one interval later exactly one attempt goes through
+        assertEquals(0, buckets.acquire("alice", NOW + SECOND));
+        assertEquals(1, buckets.acquire("alice", NOW + SECOND));
+        assertEquals(2, rejected.count());
+
+        // left alone for longer than a period, the whole burst is back
+        long later = NOW + 10 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, buckets.acquire("alice", later));
+        }
+        assertEquals(1, buckets.acquire("alice", later));
+    }
+
+    @Test
+    void retryAfterIsRoundedUpToWholeSeconds() {
+        for (int i = 0; i < 3; i++) {
+            buckets.acquire("alice", NOW);
+        }
+        // 10 ms into the interval, the token is back in 990 ms
+        assertEquals(1, buckets.acquire("alice", NOW + TimeUnit.MILLISECONDS.toNanos(10)));
+        assertEquals(0, buckets.acquire("alice", NOW + SECOND));
+    }
+
+    @Test
+    void keysHaveTheirOwnBuckets() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, buckets.acquire("alice", NOW));
+        }
+        assertEquals(1, buckets.acquire("alice", NOW));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, buckets.acquire("bob", NOW), "bob pays for alice's attempts");
+        }
+        assertEquals(1, buckets.acquire("bob", NOW));
+    }
+
+}
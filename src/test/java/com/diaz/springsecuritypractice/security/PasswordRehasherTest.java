@@ -0,0 +1,108 @@
+package com.diaz.springsecuritypractice.security;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+    Users stored with a hash from before the {bcrypt} prefix, or with a lower strength than security.password.strength,
+    log in and get their hash replaced in the background. The login caches the user with the old hash, so the cache
+    entry going away is the sign that the upgrade has been saved. A current hash is left as it is.
+*/
+
+@SpringBootTest(properties = "security.password.strength=10")
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class PasswordRehasherTest {
+
+    private static final String PASSWORD = "password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UsernameBloomFilter usernameFilter;
+
+    @Test
+    void hashWithoutPrefixIsReplaced() throws Exception {
+        assertUpgradedAfterLogin("rehash-legacy", new BCryptPasswordEncoder(4).encode(PASSWORD));
+    }
+
+    @Test
+    void weakerHashIsReplaced() throws Exception {
+        assertUpgradedAfterLogin("rehash-weak", "{bcrypt}" + new BCryptPasswordEncoder(4).encode(PASSWORD));
+    }
+
+    @Test
+    void currentHashIsLeftAlone() throws Exception {
+        String hash = "{bcrypt}" + new BCryptPasswordEncoder(10).encode(PASSWORD);
+        insertUser("rehash-current", hash);
+
+        login("rehash-current");
+        // nothing was queued, the user stays cached with the hash it logged in with
+        assertNotNull(userCache.getUserFromCache("rehash-current"));
+        assertEquals(hash, storedHash("rehash-current"));
+    }
+
+    private void assertUpgradedAfterLogin(String username, String oldHash) throws Exception {
+        insertUser(username, oldHash);
+
+        login(username);
+        awaitEviction(username);
+
+        String newHash = storedHash(username);
+        assertTrue(newHash.startsWith("{bcrypt}$2a$10$"), newHash);
+        assertTrue(passwordEncoder.matches(PASSWORD, newHash));
+
+        // the next login reads the new hash and has nothing left to upgrade
+        login(username);
+        assertNotNull(userCache.getUserFromCache(username));
+        assertEquals(newHash, storedHash(username));
+    }
+
+    private void awaitEviction(String username) throws InterruptedException {
+        for (int attempt = 0; attempt < 250 && userCache.getUserFromCache(username) != null; attempt++) {
+            Thread.sleep(20);
+        }
+        assertNull(userCache.getUserFromCache(username), username + " is still cached with its old hash");
+    }
+
+    private void login(String username) throws Exception {
+        mockMvc.perform(post("/auth/token")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\": \"" + username + "\", \"password\": \"" + PASSWORD + "\"}"))
+                .andExpect(status().isOk());
+    }
+
+    // straight into the table with a hash of our choosing, the way users from before the upgrade are stored
+    private void insertUser(String username, String hash) {
+        usernameFilter.add(username);
+        jdbcTemplate.update("INSERT INTO user_info (name, email, password, roles) VALUES (?, ?, ?, ?)",
+                username, username + "@example.com", hash, "ROLE_USER");
+    }
+
+    private String storedHash(String username) {
+        return jdbcTemplate.queryForObject("SELECT password FROM user_info WHERE name = ?", String.class, username);
+    }
+
+}
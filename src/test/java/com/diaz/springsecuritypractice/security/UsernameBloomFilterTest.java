@@ -0,0 +1,63 @@
+package com.diaz.springsecuritypractice.security;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    The filter must never say "no" to a name MySQL's utf8mb4_0900_ai_ci collation would find, whichever way round the
+    case, accents and expansions are. Runs against the filter loaded from the h2 profile's user_info.
+*/
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class UsernameBloomFilterTest {
+
+    @Autowired
+    private UsernameBloomFilter filter;
+
+    @Test
+    void asciiLoginsFindSavedNamesWithOtherLetters() {
+        filter.add("Straße-filter");
+        filter.add("Æsir-filter");
+        filter.add("José Ørjan-filter");
+        filter.add("Ĳssel-filter");
+
+        assertTrue(filter.mightContain("STRASSE-filter"));
+        assertTrue(filter.mightContain("aesir-filter"));
+        assertTrue(filter.mightContain("jose orjan-filter"));
+        assertTrue(filter.mightContain("ijssel-filter"));
+    }
+
+    @Test
+    void loginsWithOtherLettersAreAlwaysAMaybe() {
+        filter.add("strasse-maybe");
+
+        assertTrue(filter.mightContain("straße-maybe"));
+        assertTrue(filter.mightContain("名前-never-saved"));
+        assertFalse(filter.mightContain("ascii-never-saved"));
+    }
+
+    @Test
+    void caseAndTrailingSpacesDontMatter() {
+        filter.add("Devin-filter  ");
+
+        assertTrue(filter.mightContain("devin-filter"));
+        assertTrue(filter.mightContain("DEVIN-FILTER "));
+    }
+
+    @Test
+    void normalizeFoldsToTheAsciiNameTheCollationEquates() {
+        assertEquals("strasse", UsernameBloomFilter.normalize("Straße"));
+        assertEquals("aeon", UsernameBloomFilter.normalize("Æon"));
+        assertEquals("oeuvre", UsernameBloomFilter.normalize("Œuvre"));
+        assertEquals("cafe", UsernameBloomFilter.normalize("café "));
+        assertEquals("ijssel", UsernameBloomFilter.normalize("Ĳssel"));
+        // no ASCII name is equal to these, they are never added
+        assertNull(UsernameBloomFilter.normalize("名前"));
+        assertNull(UsernameBloomFilter.normalize("Δelta"));
+    }
+
+}
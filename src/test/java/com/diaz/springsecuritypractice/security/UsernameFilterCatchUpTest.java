@@ -0,0 +1,73 @@
+package com.diaz.springsecuritypractice.security;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+    A user saved the way another node would save it: straight into user_info, never added to this node's filter. The
+    periodic scan is an hour away, so only the filter comparing itself with the table's highest id lets it log in, and
+    until max-staleness has passed since the last comparison it is turned away like a name that was never saved.
+*/
+
+@SpringBootTest(properties = {"security.username-filter.refresh-interval=1h",
+        "security.username-filter.max-staleness=3s"})
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class UsernameFilterCatchUpTest {
+
+    private static final String PASSWORD = "password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UsernameBloomFilter filter;
+
+    @Test
+    void userSavedElsewhereLogsInOnceMaxStalenessHasPassed() throws Exception {
+        // this "no" compares the filter with user_info, the next comparison is 3 seconds away
+        long compared = System.nanoTime();
+        assertFalse(filter.mightContain("catch-up-never-saved"));
+
+        insertUser("catch-up-elsewhere");
+        assertFalse(filter.mightContain("catch-up-elsewhere"), "the window is gone, nothing left to test");
+        assertTrue(System.nanoTime() - compared < TimeUnit.SECONDS.toNanos(3), "too slow to have been in the window");
+        login("catch-up-elsewhere").andExpect(status().isUnauthorized());
+
+        Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(compared - System.nanoTime()) + 3_100));
+        login("catch-up-elsewhere").andExpect(status().isOk());
+        assertTrue(filter.mightContain("catch-up-elsewhere"));
+        assertFalse(filter.mightContain("catch-up-never-saved"));
+    }
+
+    private ResultActions login(String username) throws Exception {
+        return mockMvc.perform(post("/auth/token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\": \"" + username + "\", \"password\": \"" + PASSWORD + "\"}"));
+    }
+
+    private void insertUser(String username) {
+        jdbcTemplate.update("INSERT INTO user_info (name, email, password, roles) VALUES (?, ?, ?, ?)",
+                username, username + "@example.com", passwordEncoder.encode(PASSWORD), "ROLE_USER");
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    The open addressing layout, which the application's 1..n catalogs never use: ids spread over the whole int range,
+    negative ids, lookups that miss after probing through a run of full slots (also one that wraps around the end of the
+    table), duplicate ids and keyset pages over a sparse catalog. Every catalog here is checked to really be sparse.
+*/
+
+class CatalogSnapshotTest {
+
+    @Test
+    void widelySpacedAndNegativeIds() {
+        int[] ids = {Integer.MIN_VALUE, -1_000_000, -7, 0, 3, 90_000, 123_456_789, Integer.MAX_VALUE};
+        CatalogSnapshot snapshot = sparse(ids);
+
+        for (int position = 0; position < ids.length; position++) {
+            assertEquals(ids[position], snapshot.find(ids[position]).getProductId());
+            assertEquals(position, snapshot.positionOf(ids[position]));
+        }
+        for (int miss : new int[] {Integer.MIN_VALUE + 1, -1_000_001, -6, -1, 1, 4, 89_999, Integer.MAX_VALUE - 1}) {
+            assertNull(snapshot.find(miss), "id " + miss);
+            assertEquals(-1, snapshot.positionOf(miss));
+        }
+    }
+
+    @Test
+    void randomSparseIdsMatchASet() {
+        Random random = new Random(7);
+        Set<Integer> ids = new HashSet<>();
+        while (ids.size() < 1_000) {
+            ids.add(random.nextInt());
+        }
+        CatalogSnapshot snapshot = sparse(ids.stream().mapToInt(Integer::intValue).toArray());
+
+        for (int id : ids) {
+            assertEquals(id, snapshot.find(id).getProductId());
+        }
+        for (int i = 0; i < 100_000; i++) {
+            int id = random.nextInt();
+            assertEquals(ids.contains(id), snapshot.find(id) != null, "id " + id);
+        }
+    }
+
+    // 20 products make a table of 64 slots. Ids that all hash to one slot fill the slots after it one by one
+    @Test
+    void missesProbeThroughAFullRun() {
+        assertRunOfCollisions(0);
+        // the run starts near the end of the table and continues at slot 0
+        assertRunOfCollisions(60);
+    }
+
+    @Test
+    void duplicateIdsAreRejected() {
+        // dense and sparse
+        assertThrows(IllegalArgumentException.class, () -> new CatalogSnapshot(products(1, 2, 3, 2)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CatalogSnapshot(products(-5, 1_000_000, 7, 1_000_000, 2_000_000_000)));
+    }
+
+    @Test
+    void pagesWalkASparseCatalogInIdOrder() {
+        CatalogSnapshot snapshot = sparse(2_000_000_000, 1_000_000, -50, 1_000, 7);
+        assertEquals(2_000_000_000, snapshot.lastId());
+
+        assertEquals(List.of(-50, 7), ids(snapshot.page(Integer.MIN_VALUE, 2)));
+        assertEquals(List.of(1_000, 1_000_000), ids(snapshot.page(7, 2)));
+        // the cursor doesn't have to be an id of the catalog
+        assertEquals(List.of(1_000, 1_000_000, 2_000_000_000), ids(snapshot.page(8, 10)));
+        assertEquals(List.of(2_000_000_000), ids(snapshot.page(999_999_999, Integer.MAX_VALUE)));
+        assertEquals(List.of(), ids(snapshot.page(2_000_000_000, 10)));
+        assertEquals(List.of(), ids(snapshot.page(Integer.MAX_VALUE, 10)));
+    }
+
+    private static void assertRunOfCollisions(int slot) {
+        List<Integer> colliding = new ArrayList<>();
+        for (int id = 1_000; colliding.size() < 25; id += 1_000) {
+            if ((CatalogSnapshot.mix(id) & 63) == slot) {
+                colliding.add(id);
+            }
+        }
+        // the first 20 are the catalog, the other 5 hash to the same slot and aren't in it
+        List<Integer> ids = colliding.subList(0, 20);
+        CatalogSnapshot snapshot = sparse(ids.stream().mapToInt(Integer::intValue).toArray());
+        assertEquals(64, ((int[]) ReflectionTestUtils.getField(snapshot, "hashKeys")).length);
+
+        List<Integer> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        for (int id : ids) {
+            assertEquals(sorted.indexOf(id), snapshot.positionOf(id), "id " + id);
+        }
+        for (int miss : colliding.subList(20, 25)) {
+            assertNull(snapshot.find(miss), "id " + miss);
+        }
+
+        // a miss that hashes into the middle of the run probes through its rest
+        int middle = (slot + 10) & 63;
+        int miss = IntStream.iterate(1, id -> id + 1).filter(id -> (CatalogSnapshot.mix(id) & 63) == middle)
+                .filter(id -> !ids.contains(id)).findFirst().orElseThrow();
+        assertNull(snapshot.find(miss), "id " + miss);
+    }
+
+    private static CatalogSnapshot sparse(int... ids) {
+        CatalogSnapshot snapshot = new CatalogSnapshot(products(ids));
+        assertNull(ReflectionTestUtils.getField(snapshot, "densePositions"),
+                "dense layout for " + Arrays.toString(ids));
+        return snapshot;
+    }
+
+    // handed to the snapshot in the order given, it sorts them by id itself
+    private static List<Product> products(int... ids) {
+        List<Product> products = new ArrayList<>();
+        for (int id : ids) {
+            products.add(Product.builder().productId(id).productName("product " + id).quantity(1).price(1).build());
+        }
+        return products;
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getProductId).toList();
+    }
+
+}
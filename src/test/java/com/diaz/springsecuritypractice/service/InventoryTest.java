@@ -0,0 +1,120 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.Reservation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Flash sale on one hot product: many threads reserve and release at the same time, the stock must never go below
+    zero and every unit must be accounted for once the dust settles.
+*/
+
+class InventoryTest {
+
+    private static final int HOT_PRODUCT = 7;
+    private static final int STOCK = 1_000;
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        Inventory inventory = inventory(Duration.ofMinutes(10));
+        int threads = 32;
+        int attemptsPerThread = 2_000;
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> held = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String owner = "user" + t;
+            held.add(pool.submit(() -> {
+                List<Reservation> mine = new ArrayList<>();
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        mine.add(inventory.reserve(HOT_PRODUCT, 1 + random.nextInt(3), owner));
+                    } catch (InsufficientStockException e) {
+                        assertTrue(e.getAvailable() >= 0);
+                    }
+                    // give some units back now and then so stock keeps moving between threads
+                    if (!mine.isEmpty() && random.nextInt(4) == 0) {
+                        assertTrue(inventory.release(mine.remove(random.nextInt(mine.size())).getReservationId(),
+                                owner));
+                    }
+                    assertTrue(inventory.available(HOT_PRODUCT) >= 0);
+                }
+                return mine.stream().mapToInt(Reservation::getQuantity).sum();
+            }));
+        }
+        start.countDown();
+
+        int stillHeld = 0;
+        for (Future<Integer> future : held) {
+            stillHeld += future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(stillHeld <= STOCK, "reserved " + stillHeld + " units of " + STOCK);
+        assertEquals(STOCK - stillHeld, inventory.available(HOT_PRODUCT));
+        // its neighbours share no counter with the hot product
+        assertEquals(STOCK, inventory.available(HOT_PRODUCT - 1));
+        assertEquals(STOCK, inventory.available(HOT_PRODUCT + 1));
+    }
+
+    @Test
+    void expiredReservationsReturnToStock() throws Exception {
+        Inventory inventory = inventory(Duration.ofMillis(20));
+        Reservation reservation = inventory.reserve(HOT_PRODUCT, 5, "user");
+        assertEquals(STOCK - 5, inventory.available(HOT_PRODUCT));
+
+        Thread.sleep(50);
+        inventory.expireReservations();
+
+        assertEquals(STOCK, inventory.available(HOT_PRODUCT));
+        assertFalse(inventory.release(reservation.getReservationId(), "user"));
+        assertEquals(STOCK, inventory.available(HOT_PRODUCT));
+    }
+
+    @Test
+    void onlyTheOwnerCanRelease() {
+        Inventory inventory = inventory(Duration.ofMinutes(10));
+        Reservation reservation = inventory.reserve(HOT_PRODUCT, 2, "user");
+
+        assertFalse(inventory.release(reservation.getReservationId(), "someone else"));
+        assertTrue(inventory.release(reservation.getReservationId(), "user"));
+        assertFalse(inventory.release(reservation.getReservationId(), "user"));
+        assertEquals(STOCK, inventory.available(HOT_PRODUCT));
+    }
+
+    @Test
+    void soldOutProductRejectsReservations() {
+        Inventory inventory = inventory(Duration.ofMinutes(10));
+        inventory.reserve(HOT_PRODUCT, STOCK, "user");
+
+        InsufficientStockException e = assertThrows(InsufficientStockException.class,
+                () -> inventory.reserve(HOT_PRODUCT, 1, "user"));
+        assertEquals(0, e.getAvailable());
+    }
+
+    private Inventory inventory(Duration ttl) {
+        List<Product> products = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            products.add(new Product(id, "product " + id, STOCK, 10));
+        }
+        Inventory inventory = new Inventory(ttl, Duration.ofSeconds(1), new SimpleMeterRegistry());
+        inventory.reset(new CatalogSnapshot(products));
+        return inventory;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.diaz.springsecuritypractice.service;
+import com.diaz.springsecuritypractice.dto.Product;
+import com.diaz.springsecuritypractice.dto.ProductSearch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Every combination of filters, sort, direction and limit against a small catalog, compared with filtering and sorting
+    the whole list by hand. The catalog has repeated prices and quantities (ties stay in id order, reversed when
+    descending), names that share prefixes in different cases and a product without a name. The filter values include
+    exact matches, bounds outside the catalog and an empty range, and the limits are small and large enough that both
+    the in-order walk and the collect-and-sort path of the index are taken.
+*/
+
+class ProductSearchIndexTest {
+
+    private static final String[] NAMES = {"Apple", "apricot", "APPLE pie", "Banana", "band", "b", "Cherry", null};
+    private static final double[] PRICES = {1.0, 5.0, 12.5, 5.0, 20.0, 99.99};
+    private static final int[] QUANTITIES = {0, 3, 1, 50, 3};
+
+    private static final List<Double> MIN_PRICES = Arrays.asList(null, 0.0, 5.0, 12.5, 1000.0);
+    private static final List<Double> MAX_PRICES = Arrays.asList(null, 5.0, 12.5, 0.5);
+    private static final List<Integer> MIN_QUANTITIES = Arrays.asList(null, 0, 3, 100);
+    private static final List<String> PREFIXES = Arrays.asList(null, "", "ap", "APP", "b", "zz");
+    private static final int[] LIMITS = {1, 3, 1_000};
+
+    @Test
+    void everySearchMatchesBruteForce() {
+        List<Product> catalog = catalog(40);
+        CatalogSnapshot snapshot = new CatalogSnapshot(catalog);
+        int searches = 0;
+
+        for (Double minPrice : MIN_PRICES) {
+            for (Double maxPrice : MAX_PRICES) {
+                for (Integer minQuantity : MIN_QUANTITIES) {
+                    for (String prefix : PREFIXES) {
+                        for (ProductSearch.Sort sort : ProductSearch.Sort.values()) {
+                            for (boolean descending : new boolean[] {false, true}) {
+                                for (int limit : LIMITS) {
+                                    ProductSearch search = ProductSearch.builder()
+                                            .minPrice(minPrice)
+                                            .maxPrice(maxPrice)
+                                            .minQuantity(minQuantity)
+                                            .namePrefix(prefix)
+                                            .sort(sort)
+                                            .descending(descending)
+                                            .build();
+                                    assertEquals(bruteForce(catalog, search, limit), snapshot.search(search, limit),
+                                            search + " limit " + limit);
+                                    searches++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(11_520, searches);
+    }
+
+    @Test
+    void emptyCatalogFindsNothing() {
+        for (ProductSearch.Sort sort : ProductSearch.Sort.values()) {
+            ProductSearch search = ProductSearch.builder().sort(sort).namePrefix("a").build();
+            assertEquals(List.of(), CatalogSnapshot.EMPTY.search(search, 10));
+            assertEquals(List.of(), CatalogSnapshot.EMPTY.search(ProductSearch.builder().sort(sort).build(), 10));
+        }
+    }
+
+    // ids with gaps, handed to the snapshot out of order
+    private static List<Product> catalog(int size) {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            products.add(Product.builder()
+                    .productId(3 * i + 1)
+                    .productName(NAMES[i % NAMES.length])
+                    .price(PRICES[i % PRICES.length])
+                    .quantity(QUANTITIES[i % QUANTITIES.length])
+                    .build());
+        }
+        Collections.shuffle(products, new Random(42));
+        return products;
+    }
+
+    private static List<Product> bruteForce(List<Product> catalog, ProductSearch search, int limit) {
+        String prefix = search.getNamePrefix() == null ? null : search.getNamePrefix().toLowerCase(Locale.ROOT);
+        Comparator<Product> byField = switch (search.getSort()) {
+            case ID -> Comparator.comparingInt(Product::getProductId);
+            case PRICE -> Comparator.comparingDouble(Product::getPrice);
+            case QUANTITY -> Comparator.comparingInt(Product::getQuantity);
+            case NAME -> Comparator.comparing(ProductSearchIndexTest::lowerCaseName);
+        };
+        List<Product> found = new ArrayList<>(catalog.stream()
+                .filter(product -> search.getMinPrice() == null || product.getPrice() >= search.getMinPrice())
+                .filter(product -> search.getMaxPrice() == null || product.getPrice() <= search.getMaxPrice())
+                .filter(product -> search.getMinQuantity() == null || product.getQuantity() >= search.getMinQuantity())
+                .filter(product -> prefix == null || lowerCaseName(product).startsWith(prefix))
+                .sorted(byField.thenComparingInt(Product::getProductId))
+                .toList());
+        if (search.isDescending()) {
+            Collections.reverse(found);
+        }
+        return found.subList(0, Math.min(limit, found.size()));
+    }
+
+    private static String lowerCaseName(Product product) {
+        return product.getProductName() == null ? "" : product.getProductName().toLowerCase(Locale.ROOT);
+    }
+
+}